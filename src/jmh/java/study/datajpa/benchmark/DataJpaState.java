@@ -0,0 +1,92 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.DataJpaApplication;
+import study.datajpa.dto.MemberImport;
+import study.datajpa.repository.MemberPagingRepository;
+import study.datajpa.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// 벤치마크마다 스프링 컨텍스트를 띄우고 임베디드 H2(메모리)에 데이터를 넣어 둔다.
+// 데이터 크기는 -p members=10000 -p teams=100 처럼 바꿀 수 있다. 조합마다 컨텍스트를 새로 띄운다.
+@State(Scope.Benchmark)
+public class DataJpaState {
+
+    @Param({"100", "10000"})
+    public int members;
+
+    @Param({"10"})
+    public int teams;
+
+    public MemberRepository memberRepository;
+    public MemberPagingRepository memberPagingRepository;
+    public String username;
+
+    public EntityManager em;
+
+    private ConfigurableApplicationContext context;
+    private TransactionTemplate readOnlyTransaction;
+    private TransactionTemplate rollbackTransaction;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // application.yml보다 우선해야 하기 때문에 커맨드라인 인자로 넘긴다.
+        String[] args = {
+                "--spring.datasource.url=jdbc:h2:mem:jmh;DB_CLOSE_DELAY=-1",
+                "--decorator.datasource.enabled=false", // p6spy 끄기. 안 끄면 SQL 로그 비용까지 재게 된다.
+                "--logging.level.org.hibernate.SQL=warn",
+                // 2차 캐시 / username 조회 캐시가 켜져 있으면 DB 조회 방식 차이가 안 보인다.
+                "--spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "--spring.jpa.properties.hibernate.generate_statistics=false",
+                "--member.query-cache.maximum-size=0"
+        };
+
+        SpringApplication application = new SpringApplication(DataJpaApplication.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        context = application.run(args);
+
+        memberRepository = context.getBean(MemberRepository.class);
+        memberPagingRepository = context.getBean(MemberPagingRepository.class);
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+        rollbackTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        em = SharedEntityManagerCreator.createSharedEntityManager(context.getBean(EntityManagerFactory.class));
+
+        memberRepository.importAll(IntStream.range(0, members)
+                .mapToObj(i -> new MemberImport("member" + i, i % 50, "team" + (i % teams))));
+        username = "member" + (members / 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // 호출마다 새 트랜잭션(= 새 영속성 컨텍스트). 지연 로딩까지 이 안에서 끝나야 한다.
+    public <T> T inTransaction(Supplier<T> work) {
+        return readOnlyTransaction.execute(status -> work.get());
+    }
+
+    // 쓰기 트랜잭션. 데이터가 바뀌면 다음 호출 결과가 달라지기 때문에 항상 롤백한다.
+    public <T> T inRollbackTransaction(Supplier<T> work) {
+        return rollbackTransaction.execute(status -> {
+            status.setRollbackOnly();
+            return work.get();
+        });
+    }
+}
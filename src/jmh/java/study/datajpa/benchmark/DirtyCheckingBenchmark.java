@@ -0,0 +1,67 @@
+package study.datajpa.benchmark;
+
+import org.hibernate.engine.spi.ManagedEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import study.datajpa.entity.Member;
+
+import java.util.List;
+
+// 읽고 고치고 flush 하는 긴 트랜잭션에서 dirty checking 비용. 바이트코드 향상 전후로 같은 벤치마크를 돌려서 비교한다.
+// ./gradlew jmh -PjmhIncludes=DirtyChecking (향상 안 함) / ./gradlew jmh -PjmhIncludes=DirtyChecking -Penhance (향상)
+// 회원 전부(members)를 영속 상태로 올려 놓고 flushes번 flush 한다. 향상 안 된 엔티티는 flush마다 전부를 스냅샷과 필드별로 비교한다.
+// 엔티티당 메모리는 gc 프로파일러의 gc.alloc.rate.norm(호출당 할당 바이트)을 members로 나눠서 본다. 로딩 / 팀 프록시 비용도 여기 들어간다.
+@State(Scope.Benchmark)
+public class DirtyCheckingBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(DirtyCheckingBenchmark.class);
+
+    @Param({"10"})
+    public int flushes;
+
+    // 아무것도 안 바꾸고 flush. 향상된 엔티티는 바뀐 필드 목록이 비어 있어서 비교 자체를 안 한다.
+    @Benchmark
+    public void flushUnchanged(DataJpaState state, Blackhole blackhole) {
+        state.inRollbackTransaction(() -> {
+            List<Member> members = state.memberRepository.findMemberCustom();
+            for (int i = 0; i < flushes; i++) {
+                state.em.flush();
+            }
+            return consume(members, blackhole);
+        });
+    }
+
+    // flush마다 한 명씩 나이를 바꾼다. update는 flushes번 나간다.
+    @Benchmark
+    public void flushOneChanged(DataJpaState state, Blackhole blackhole) {
+        state.inRollbackTransaction(() -> {
+            List<Member> members = state.memberRepository.findMemberCustom();
+            for (int i = 0; i < flushes; i++) {
+                Member member = members.get(i % members.size());
+                member.setAge(member.getAge() + 1);
+                state.em.flush();
+            }
+            return consume(members, blackhole);
+        });
+    }
+
+    // 결과를 비교할 때 어느 빌드였는지 헷갈리지 않게 찍어 둔다. 향상된 엔티티는 ManagedEntity를 구현한다.
+    @Setup(Level.Trial)
+    public void logEnhancement() {
+        log.info("bytecode enhancement: {}", ManagedEntity.class.isAssignableFrom(Member.class));
+    }
+
+    private static Void consume(List<Member> members, Blackhole blackhole) {
+        for (Member member : members) {
+            blackhole.consume(member.getAge());
+        }
+        return null;
+    }
+}
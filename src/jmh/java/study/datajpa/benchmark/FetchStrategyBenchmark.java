@@ -0,0 +1,47 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+import study.datajpa.entity.Member;
+
+import java.util.List;
+
+// 회원 + 팀을 가져오는 방법별 비교. 전부 팀 이름까지 읽어서 지연 로딩 비용도 같이 잰다.
+public class FetchStrategyBenchmark {
+
+    @Benchmark
+    public void fetchJoin(DataJpaState state, Blackhole blackhole) {
+        state.inTransaction(() -> consume(state.memberRepository.findMemberFetchJoin(), blackhole));
+    }
+
+    @Benchmark
+    public void entityGraphQuery(DataJpaState state, Blackhole blackhole) {
+        state.inTransaction(() -> consume(state.memberRepository.findMemberEntityGraph(), blackhole));
+    }
+
+    // findAll()에 @EntityGraph
+    @Benchmark
+    public void entityGraphFindAll(DataJpaState state, Blackhole blackhole) {
+        state.inTransaction(() -> consume(state.memberRepository.findAll(), blackhole));
+    }
+
+    // @NamedEntityGraph("Member.all")로 한 명 조회.
+    @Benchmark
+    public void namedEntityGraph(DataJpaState state, Blackhole blackhole) {
+        state.inTransaction(() -> consume(state.memberRepository.findEntityGraphByUsername(state.username), blackhole));
+    }
+
+    // 회원만 조회하고 팀은 지연 로딩. (default_batch_fetch_size로 in 쿼리)
+    @Benchmark
+    public void lazyLoading(DataJpaState state, Blackhole blackhole) {
+        state.inTransaction(() -> consume(state.memberRepository.findMemberCustom(), blackhole));
+    }
+
+    private static Void consume(List<Member> members, Blackhole blackhole) {
+        for (Member member : members) {
+            blackhole.consume(member.getUsername());
+            blackhole.consume(member.getTeam() != null ? member.getTeam().getName() : null);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,56 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.support.TotalCountMode;
+
+import java.util.List;
+
+// 페이징 방법별 비교. 같은 크기의 페이지를 offset 페이징 / 슬라이스 / 카운트 분리 / 커서로 가져온다.
+@State(Scope.Benchmark)
+public class PagingBenchmark {
+
+    @Param({"20"})
+    public int size;
+
+    // 0이면 첫 페이지. 뒤 페이지로 갈수록 offset 페이징이 느려지는 걸 보려면 -p page=100
+    @Param({"0"})
+    public int page;
+
+    private PageRequest pageRequest() {
+        return PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "username"));
+    }
+
+    @Benchmark
+    public Page<Member> findByAge(DataJpaState state) {
+        return state.inTransaction(() -> state.memberRepository.findByAge(10, pageRequest()));
+    }
+
+    @Benchmark
+    public Slice<Member> findSlicedByAge(DataJpaState state) {
+        return state.inTransaction(() -> state.memberRepository.findSlicedByAge(10, pageRequest()));
+    }
+
+    @Benchmark
+    public Page<Member> pagingExecutorExact(DataJpaState state) {
+        return state.inTransaction(() -> state.memberPagingRepository.findAll(pageRequest(), TotalCountMode.EXACT));
+    }
+
+    @Benchmark
+    public Page<Member> pagingExecutorCached(DataJpaState state) {
+        return state.inTransaction(() -> state.memberPagingRepository.findAll(pageRequest(), TotalCountMode.CACHED));
+    }
+
+    // 커서 페이징은 offset이 없으니 page와 상관없이 username 기준 중간부터 한 페이지.
+    @Benchmark
+    public List<Member> findNextPage(DataJpaState state) {
+        return state.inTransaction(() -> state.memberRepository.findNextPage(state.username, Long.MAX_VALUE, PageRequest.of(0, size)));
+    }
+}
@@ -0,0 +1,37 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import study.datajpa.repository.NestedClosedProjections;
+import study.datajpa.repository.UsernameOnly;
+import study.datajpa.repository.UsernameOnlyDto;
+
+import java.util.List;
+
+// findProjectionsByUsername의 반환 타입별 비교.
+public class ProjectionBenchmark {
+
+    // open projection. 엔티티를 다 가져와서 SpEL로 값을 만든다.
+    @Benchmark
+    public String usernameOnly(DataJpaState state) {
+        return state.inTransaction(() -> {
+            List<UsernameOnly> result = state.memberRepository.findProjectionsByUsername(state.username, UsernameOnly.class);
+            return result.isEmpty() ? null : result.get(0).getUsername();
+        });
+    }
+
+    @Benchmark
+    public String usernameOnlyDto(DataJpaState state) {
+        return state.inTransaction(() -> {
+            List<UsernameOnlyDto> result = state.memberRepository.findProjectionsByUsername(state.username, UsernameOnlyDto.class);
+            return result.isEmpty() ? null : result.get(0).getUsername();
+        });
+    }
+
+    @Benchmark
+    public String nestedClosedProjections(DataJpaState state) {
+        return state.inTransaction(() -> {
+            List<NestedClosedProjections> result = state.memberRepository.findProjectionsByUsername(state.username, NestedClosedProjections.class);
+            return result.isEmpty() ? null : result.get(0).getTeam().getName();
+        });
+    }
+}
@@ -0,0 +1,76 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import study.datajpa.DataJpaApplication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+// 기동부터 첫 요청 응답까지 걸리는 시간(time-to-first-request). 오토스케일로 새로 뜬 인스턴스가 일을 시작하기까지의 시간이다.
+// 클래스 로딩 / JIT까지 처음부터 재야 해서 JVM 하나에 한 번만 잰다. (SingleShotTime, 포크마다 한 번)
+// 첫 요청은 JPA까지 타는 /members/cursor. faststart는 뜨는 건 빠르지만 미룬 일(리포지토리 초기화, 빈 생성)이 첫 요청으로 넘어온다. 그것까지 포함해서 본다.
+// java -jar build/libs/data-jpa-0.0.1-SNAPSHOT-jmh.jar StartupBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class StartupBenchmark {
+
+    @Param({"default", "faststart"})
+    public String profile;
+
+    private ConfigurableApplicationContext context;
+
+    @Benchmark
+    public int timeToFirstRequest() {
+        String[] args = {
+                "--spring.profiles.active=" + profile,
+                "--spring.datasource.url=jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1",
+                "--server.port=0",
+                "--decorator.datasource.enabled=false",
+                "--logging.level.org.hibernate.SQL=warn"
+        };
+        context = SpringApplication.run(DataJpaApplication.class, args);
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        return get("http://localhost:" + port + "/members/cursor?size=1");
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    private static int get(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            try (InputStream body = connection.getInputStream()) {
+                body.readAllBytes();
+            }
+            return connection.getResponseCode();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -4,15 +4,14 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.domain.AuditorAware;
-import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import study.datajpa.repository.support.TransactionScopedAuditorAware;
 
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
-// data jpa를 이용한 Auditing을 위해 필수
-//@EnableJpaAuditing(modifyOnCreate = false) // update가 null 컬럼으로 들어간다. 근데 관례상 같이 넣는 경우가 많기 때문에 굳이 이걸 할 필요는 없다.
-@EnableJpaAuditing
+// data jpa를 이용한 Auditing 설정(@EnableJpaAuditing)은 config.AuditingConfig로 옮겼다. auditing.fast-path에 따라 켜고 끈다.
 @SpringBootApplication
 //@EnableJpaRepositories(basePackages = "study.datajpa.repository") 부트를 사용하면 이게 필요없음. 자동으로 스프링 데이터 jpa가 끌어올 수 있다.
 public class DataJpaApplication {
@@ -24,7 +23,9 @@ public class DataJpaApplication {
 	@Bean
 	public AuditorAware<String> auditorProvider() {
 		// 지금은 랜덤으로 했지만 실제로 쓸 땐 세션값 꺼내서 쓰면 된다.
-		return () -> Optional.of(UUID.randomUUID().toString());
+		// UUID.randomUUID()는 SecureRandom을 써서 스레드끼리 경합한다. 감사용 랜덤 값이라 ThreadLocalRandom으로 충분하다.
+		// 그리고 트랜잭션마다 한 번만 구한다. (엔티티마다 부르지 않는다)
+		return new TransactionScopedAuditorAware<>(() -> Optional.of(randomUuid().toString()));
 		// 람다 풀면 아래처럼됨. 인터페이스에서 메서드가 하나면 람다로 바꿀 수 있다.
 //		return new AuditorAware<String>() {
 //			@Override
@@ -33,4 +34,12 @@ public class DataJpaApplication {
 //			}
 //		};
 	}
+
+	// 버전 4 UUID와 모양은 같다.
+	private static UUID randomUuid() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long msb = (random.nextLong() & ~0xF000L) | 0x4000L;
+		long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		return new UUID(msb, lsb);
+	}
 }
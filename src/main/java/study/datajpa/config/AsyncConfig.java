@@ -0,0 +1,32 @@
+package study.datajpa.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import study.datajpa.repository.support.ReplicaStickiness;
+import study.datajpa.repository.support.RepositoryExecutor;
+
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+
+    // 커넥션 풀 크기에서 reserved-connections만큼 빼고 나머지만 비동기 쿼리에 쓴다.
+    @Bean(destroyMethod = "shutdown")
+    public RepositoryExecutor repositoryExecutor(@Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                                                 @Value("${repository.async.reserved-connections:2}") int reserved,
+                                                 @Value("${repository.async.queue-capacity:1000}") int queueCapacity) {
+        return new RepositoryExecutor(Math.max(1, poolSize - reserved), queueCapacity);
+    }
+
+    // 부트는 Executor 빈이 하나도 없을 때만 기본 실행기(applicationTaskExecutor)를 만든다. repositoryExecutor가 생겼으니 직접 등록한다.
+    // 이름 없는 @Async나 MVC 비동기 요청은 이쪽을 쓴다. repositoryExecutor처럼 레플리카 sticky 상태를 넘긴다.
+    @Lazy
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+        return builder.taskDecorator(ReplicaStickiness::propagate).build();
+    }
+}
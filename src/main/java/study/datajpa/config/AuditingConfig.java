@@ -0,0 +1,53 @@
+package study.datajpa.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.auditing.DateTimeProvider;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import study.datajpa.repository.support.AuditingInterceptor;
+import study.datajpa.support.CoarseClock;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// 등록일 / 수정일 / 등록자 / 수정자를 채우는 방법을 auditing.fast-path로 고른다.
+// false: 스프링 데이터 jpa의 AuditingEntityListener. (@EnableJpaAuditing)
+// true: 하이버네이트 인터셉터(AuditingInterceptor). @EnableJpaAuditing을 안 켜면 엔티티에 붙은 AuditingEntityListener는 아무것도 안 한다.
+@Configuration
+public class AuditingConfig {
+
+    // 두 모드 모두 시간은 이 빈에서 가져온다. 기본은 CoarseClock. 테스트에서는 이 빈을 바꿔서 시간을 고정한다.
+    @Bean
+    public DateTimeProvider auditingDateTimeProvider() {
+        return () -> Optional.of(CoarseClock.now());
+    }
+
+    // data jpa를 이용한 Auditing을 위해 필수
+    //@EnableJpaAuditing(modifyOnCreate = false) // update가 null 컬럼으로 들어간다. 근데 관례상 같이 넣는 경우가 많기 때문에 굳이 이걸 할 필요는 없다.
+    @Configuration
+    @ConditionalOnProperty(name = "auditing.fast-path", havingValue = "false", matchIfMissing = true)
+    @EnableJpaAuditing(dateTimeProviderRef = "auditingDateTimeProvider")
+    static class ListenerAuditingConfig {
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "auditing.fast-path", havingValue = "true")
+    static class InterceptorAuditingConfig {
+
+        InterceptorAuditingConfig(@Value("${auditing.clock-resolution:10ms}") Duration resolution) {
+            CoarseClock.start(resolution);
+        }
+
+        @Bean
+        public HibernatePropertiesCustomizer auditingInterceptorCustomizer(DateTimeProvider dateTimeProvider,
+                                                                           AuditorAware<?> auditorProvider) {
+            return properties -> properties.put(AvailableSettings.INTERCEPTOR,
+                    new AuditingInterceptor(dateTimeProvider, auditorProvider));
+        }
+    }
+}
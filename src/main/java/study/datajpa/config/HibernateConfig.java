@@ -0,0 +1,22 @@
+package study.datajpa.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import study.datajpa.repository.support.SqlStatementInspector;
+
+@Configuration
+public class HibernateConfig {
+
+    @Bean
+    public SqlStatementInspector sqlStatementInspector() {
+        return new SqlStatementInspector();
+    }
+
+    // application.yml에는 클래스 이름만 적을 수 있어서 스프링 빈을 넘기려면 이렇게 커스터마이저로 넣어야 한다.
+    @Bean
+    public HibernatePropertiesCustomizer statementInspectorCustomizer(SqlStatementInspector sqlStatementInspector) {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, sqlStatementInspector);
+    }
+}
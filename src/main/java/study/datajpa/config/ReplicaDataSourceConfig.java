@@ -0,0 +1,119 @@
+package study.datajpa.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import study.datajpa.repository.support.ReplicaRoutingDataSource;
+import study.datajpa.repository.support.ReplicaStickiness;
+import study.datajpa.repository.support.ReplicaStickinessListener;
+import study.datajpa.repository.support.SqlStatementInspector;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
+import java.time.Duration;
+
+// datasource.replica.url이 있을 때만 켜진다. 없으면 지금처럼 spring.datasource 하나만 쓴다.
+// 읽기 전용 트랜잭션은 레플리카, 나머지는 프라이머리. (ReplicaRoutingDataSource)
+// 스프링 데이터 jpa의 조회 메서드는 기본이 @Transactional(readOnly = true)라서 바깥 트랜잭션 없이 부르면 레플리카로 간다.
+@Configuration
+@ConditionalOnProperty("datasource.replica.url")
+public class ReplicaDataSourceConfig {
+
+    private static final String LAST_WRITE_ATTRIBUTE = ReplicaDataSourceConfig.class.getName() + ".lastWrite";
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConfigurationProperties("datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${datasource.replica.url}") String url,
+                                              @Value("${datasource.replica.username:${spring.datasource.username:}}") String username,
+                                              @Value("${datasource.replica.password:${spring.datasource.password:}}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica) {
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replica));
+    }
+
+    // open-in-view면 요청 내내 엔티티 매니저가 커넥션을 붙잡고 있어서, 첫 트랜잭션이 레플리카였으면 뒤의 쓰기 트랜잭션도 레플리카로 간다.
+    // 트랜잭션이 끝날 때마다 커넥션을 돌려주게 해서 트랜잭션마다 다시 고르게 한다.
+    @Bean
+    public HibernatePropertiesCustomizer replicaConnectionHandlingCustomizer() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    @Bean
+    public ReplicaStickinessListener replicaStickinessListener(SqlStatementInspector sqlStatementInspector) {
+        return new ReplicaStickinessListener(sqlStatementInspector);
+    }
+
+    // 같은 세션에서 sticky-window 안에 쓴 적이 있으면 이번 요청도 프라이머리에서 읽는다.
+    // 쓴 시각은 첫 쓰기 SQL이 나갈 때 세션에 적는다. afterCompletion은 응답이 이미 나간 뒤라서 세션을 새로 만들 수 없다.
+    @Bean
+    public WebMvcConfigurer replicaStickinessConfigurer(@Value("${datasource.replica.sticky-window:5s}") Duration stickyWindow) {
+        HandlerInterceptor interceptor = new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                ReplicaStickiness.open(() -> request.getSession().setAttribute(LAST_WRITE_ATTRIBUTE, System.currentTimeMillis()));
+                HttpSession session = request.getSession(false);
+                Object lastWrite = session == null ? null : session.getAttribute(LAST_WRITE_ATTRIBUTE);
+                if (lastWrite instanceof Long && System.currentTimeMillis() - (Long) lastWrite < stickyWindow.toMillis()) {
+                    ReplicaStickiness.stick();
+                }
+                return true;
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+                try {
+                    // 세션은 첫 쓰기 때 이미 만들어졌다. 요청 끝 시각으로 한 번 더 미뤄서 긴 요청도 sticky-window를 온전히 갖게 한다.
+                    HttpSession session = request.getSession(false);
+                    if (session != null && ReplicaStickiness.isWritten()) {
+                        session.setAttribute(LAST_WRITE_ATTRIBUTE, System.currentTimeMillis());
+                    }
+                } finally {
+                    ReplicaStickiness.clear();
+                }
+            }
+        };
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(interceptor);
+            }
+        };
+    }
+}
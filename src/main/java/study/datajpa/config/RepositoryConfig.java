@@ -0,0 +1,16 @@
+package study.datajpa.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import study.datajpa.repository.support.StripedLocks;
+
+@Configuration
+public class RepositoryConfig {
+
+    // ItemRepository insertAll / upsertAll에서 같은 id를 동시에 쓰지 않게 한다.
+    @Bean
+    public StripedLocks itemLocks(@Value("${item.lock-stripes:256}") int stripes) {
+        return new StripedLocks(stripes);
+    }
+}
@@ -0,0 +1,50 @@
+package study.datajpa.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import study.datajpa.repository.support.SqlBudget;
+import study.datajpa.repository.support.SqlStatementCounter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// 요청마다 SQL을 세고 엔드포인트별 예산과 비교한다.
+// 기본은 넘으면 로그만 남긴다. sql.budget.fail-on-exceed: true면 예산을 넘는 SQL이 나가는 순간 예외로 요청을 끊는다. (개발 / 테스트용)
+@Slf4j
+@Component
+public class SqlBudgetInterceptor implements HandlerInterceptor {
+
+    private final int defaultBudget;
+    private final boolean failOnExceed;
+
+    public SqlBudgetInterceptor(@Value("${sql.budget.default:10}") int defaultBudget,
+                                @Value("${sql.budget.fail-on-exceed:false}") boolean failOnExceed) {
+        this.defaultBudget = defaultBudget;
+        this.failOnExceed = failOnExceed;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        int budget = defaultBudget;
+        if (handler instanceof HandlerMethod) {
+            SqlBudget annotation = ((HandlerMethod) handler).getMethodAnnotation(SqlBudget.class);
+            if (annotation != null) {
+                budget = annotation.value();
+            }
+        }
+        SqlStatementCounter.begin(request.getMethod() + " " + request.getRequestURI(), budget, failOnExceed);
+        return true;
+    }
+
+    // open-in-view라서 뷰 렌더링(JSON 변환) 중에 나가는 지연 로딩 SQL까지 센 다음에 불린다.
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        SqlStatementCounter.Scope scope = SqlStatementCounter.end();
+        if (scope != null && scope.isOverBudget()) {
+            log.warn("{} executed {} SQL statements (budget {})", scope.getName(), scope.getCount(), scope.getBudget());
+        }
+    }
+}
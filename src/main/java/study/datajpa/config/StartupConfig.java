@@ -0,0 +1,34 @@
+package study.datajpa.config;
+
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import study.datajpa.repository.support.SqlStatementListener;
+
+@Configuration
+public class StartupConfig {
+
+    // spring.main.lazy-initialization(faststart 프로필)이어도 바로 만들어야 하는 빈.
+    // SQL / 엔티티 이벤트 리스너는 생성자에서 자기를 등록한다. 늦게 만들면 그 전에 나간 쓰기를 놓쳐서 캐시에 옛날 값이 남는다.
+    @Bean
+    public static LazyInitializationExcludeFilter eagerListeners() {
+        return LazyInitializationExcludeFilter.forBeanTypes(SqlStatementListener.class,
+                PostInsertEventListener.class, PostUpdateEventListener.class,
+                PostDeleteEventListener.class, PostLoadEventListener.class);
+    }
+
+    // AppCDS 클래스 목록을 뽑을 때 쓴다. 다 뜨면 바로 종료한다. (build.gradle cdsClassList)
+    @Bean
+    @ConditionalOnProperty("startup.exit-on-ready")
+    public ApplicationListener<ApplicationReadyEvent> exitOnReady() {
+        return event -> System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
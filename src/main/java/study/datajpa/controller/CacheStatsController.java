@@ -0,0 +1,37 @@
+package study.datajpa.controller;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 2차 캐시 리전별 hit / miss / put 통계. hibernate.generate_statistics가 켜져 있어야 값이 쌓인다.
+@RestController
+public class CacheStatsController {
+
+    private final Statistics statistics;
+
+    public CacheStatsController(EntityManagerFactory entityManagerFactory) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @GetMapping("/cache/stats")
+    public Map<String, Map<String, Long>> stats() {
+        Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics region = statistics.getDomainDataRegionStatistics(regionName);
+            Map<String, Long> counts = new LinkedHashMap<>();
+            counts.put("hit", region.getHitCount());
+            counts.put("miss", region.getMissCount());
+            counts.put("put", region.getPutCount());
+            counts.put("size", region.getElementCountInMemory());
+            result.put(regionName, counts);
+        }
+        return result;
+    }
+}
@@ -1,29 +1,92 @@
 package study.datajpa.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import study.datajpa.dto.CursorPage;
+import study.datajpa.dto.MemberCursor;
 import study.datajpa.dto.MemberDto;
+import study.datajpa.dto.MemberImport;
+import study.datajpa.dto.MemberSummaryDto;
 import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberBulkRepository;
+import study.datajpa.repository.MemberPagingRepository;
 import study.datajpa.repository.MemberRepository;
+import study.datajpa.repository.MemberUpdateRepository;
+import study.datajpa.repository.support.AsyncQueries;
+import study.datajpa.repository.support.BulkProgress;
+import study.datajpa.repository.support.IndexAdvisor;
+import study.datajpa.repository.support.LockMode;
+import study.datajpa.repository.support.MemberAggregates;
+import study.datajpa.repository.support.MemberBatchLoader;
+import study.datajpa.repository.support.MemberDirectory;
+import study.datajpa.repository.support.MemberNearCache;
+import study.datajpa.repository.support.OffHeapMemberIndex;
+import study.datajpa.repository.support.OptimisticLockRetryTemplate;
+import study.datajpa.repository.support.SqlBudget;
+import study.datajpa.repository.support.TotalCountMode;
 
 import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @RestController
 @RequiredArgsConstructor
 public class MemberController {
     private final MemberRepository memberRepository;
+    private final MemberPagingRepository memberPagingRepository;
+    private final MemberUpdateRepository memberUpdateRepository;
+    private final MemberBulkRepository memberBulkRepository;
+    private final MemberNearCache memberNearCache;
+    private final MemberBatchLoader memberBatchLoader;
+    private final IndexAdvisor indexAdvisor;
+    private final MemberDirectory memberDirectory;
+    private final MemberAggregates memberAggregates;
+    private final OptimisticLockRetryTemplate optimisticLockRetryTemplate;
+    private final ObjectMapper objectMapper;
 
+    // 커서 페이징에서도 한 번에 가져올 수 있는 최대 개수는 pageable 설정과 맞춘다.
+    @Value("${spring.data.web.pageable.max-page-size:2000}")
+    private int maxPageSize;
+
+    @SqlBudget(1)
     @GetMapping("/members/{id}")
     public String findMember(@PathVariable("id") Long id) {
-        Member member = memberRepository.findById(id).get();
+        // 자주 찾는 id는 메모리에서 바로 꺼낸다. 없으면 동시에 들어온 요청끼리 모아서 DTO in 쿼리 한 번으로 찾고 넣어 둔다.
+        MemberDto member = memberNearCache.get(id, memberBatchLoader::loadDto)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
         return member.getUsername();
     }
 
+    // username으로 id / 나이 / 팀 id만 필요할 때. 쿼리 없이 메모리(MemberDirectory)에서 찾는다.
+    // 읽기 모델이 꺼져 있거나(member.directory.enabled) 아직 못 읽었으면 503. 벌크 연산 뒤 다시 읽는 동안도 503.
+    @GetMapping("/members/directory/{username}")
+    public OffHeapMemberIndex.Entry lookup(@PathVariable("username") String username) {
+        if (!memberDirectory.isLoaded()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "member directory is not loaded");
+        }
+        return memberDirectory.find(username)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
     // 도메인 클래스 컨버터.
     // 이런 기능을 권장하지는 않는다. pk를 외부에 공개하는 경우도 없고 쿼리가 이렇게 단순한 경우도 거의 없고. 간단간단할 때만 쓸 수 있고 복잡해지면 못 쓴다.
     // 얘는 조회용으로만 써야한다.
@@ -80,11 +143,153 @@ public class MemberController {
 //        // page를 0이 아닌 1부터 시작하는법 2. application.yml 설정에서 one-indexed-parameters를 true로 설정한다.
 //    }
 
+//    @GetMapping("/members")
+//    public Page<MemberDto> list(Pageable pageable) {
+//        return memberRepository.findAll(pageable)
+//                .map(MemberDto::new);
+//
+//    }
+
+    // 카운트 쿼리를 컨텐츠 쿼리와 동시에 다른 커넥션에서 날린다. 응답 시간이 컨텐츠 쿼리 쪽에 맞춰진다.
+    // http://localhost:8080/members?page=1&size=3&total=CACHED 처럼 토탈을 구하는 방법을 고를 수 있다. (EXACT, CACHED, APPROXIMATE, AGGREGATE)
+    // 컨텐츠 1번 + 팀 in 쿼리 1번 + 카운트 1번. (카운트는 보통 다른 스레드라 안 세어진다)
+    // 인덱스가 없는 프로퍼티로 sort하면 경고를 남긴다. 인덱스 없이 정렬하면 전체를 읽어서 정렬해야 한다. (IndexAdvisor)
+    // sql.index-advisor.reject-unindexed-sort=true면 400.
+    @SqlBudget(3)
     @GetMapping("/members")
-    public Page<MemberDto> list(Pageable pageable) {
-        return memberRepository.findAll(pageable)
+    public Page<MemberDto> list(Pageable pageable,
+                                @RequestParam(value = "total", defaultValue = "EXACT") TotalCountMode total) {
+        try {
+            indexAdvisor.checkSort(Member.class, pageable.getSort());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        return memberPagingRepository.findAll(pageable, total)
                 .map(MemberDto::new);
+    }
+
+    // 커서(keyset) 페이징. offset 페이징은 뒤 페이지로 갈수록 앞의 데이터를 다 읽고 버리기 때문에 느려진다.
+    // http://localhost:8080/members/cursor?size=10 으로 시작해서 응답의 nextCursor를 cursor로 넘기면 다음 페이지가 나온다.
+    // 토탈 카운트가 없는 대신 몇 번째 페이지든 첫 페이지랑 비용이 같다. 정렬은 username desc, id desc 고정.
+    @SqlBudget(2)
+    @GetMapping("/members/cursor")
+    public CursorPage<MemberDto> listByCursor(@RequestParam(value = "cursor", required = false) String cursor,
+                                              @RequestParam(value = "size", defaultValue = "10") int size) {
+        int limit = Math.min(Math.max(size, 1), maxPageSize);
+        PageRequest pageRequest = PageRequest.of(0, limit + 1); // 하나 더 가져와서 다음 페이지가 있는지 확인한다.
+
+        List<Member> members;
+        if (cursor == null) {
+            members = memberRepository.findFirstPage(pageRequest);
+        } else {
+            MemberCursor last = decode(cursor);
+            members = memberRepository.findNextPage(last.getUsername(), last.getId(), pageRequest);
+        }
+
+        boolean hasNext = members.size() > limit;
+        List<Member> content = hasNext ? members.subList(0, limit) : members;
+        String nextCursor = hasNext ? MemberCursor.of(content.get(content.size() - 1)).encode() : null;
 
+        return new CursorPage<>(content.stream()
+                .map(MemberDto::new)
+                .collect(Collectors.toList()), nextCursor);
+    }
+
+    // 조회 네 개를 동시에 날리고 다 끝나면 모은다. 응답 시간이 네 쿼리의 합이 아니라 가장 느린 쿼리에 맞춰진다.
+    // http://localhost:8080/members/summary?username=member1&age=10
+    @GetMapping("/members/summary")
+    public MemberSummaryDto summary(@RequestParam("username") String username, @RequestParam("age") int age) {
+        CompletableFuture<List<Member>> members = memberRepository.findAsyncByUsername(username);
+        CompletableFuture<List<Member>> sameAge = memberRepository.findAsyncByAge(age, PageRequest.of(0, 10));
+        CompletableFuture<Long> sameAgeCount = memberRepository.countAsyncByAge(age);
+        CompletableFuture<Long> totalCount = memberRepository.countAsync();
+
+        return new MemberSummaryDto(
+                toDtos(AsyncQueries.join(members)),
+                toDtos(AsyncQueries.join(sameAge)),
+                AsyncQueries.join(sameAgeCount),
+                AsyncQueries.join(totalCount));
+    }
+
+    private static List<MemberDto> toDtos(List<Member> members) {
+        return members.stream()
+                .map(MemberDto::new)
+                .collect(Collectors.toList());
+    }
+
+    // 전체 회원 내보내기. 한 줄에 회원 하나씩 JSON (NDJSON)
+    // List<Member>로 다 올려서 반환하면 회원 수만큼 힙이 튄다. 여기서는 DB에서 한 줄 읽을 때마다 바로 응답에 써 버린다.
+    @GetMapping(value = "/members/export", produces = "application/x-ndjson")
+    public void export(HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        try (SequenceWriter writer = objectMapper.writerFor(MemberDto.class)
+                .withRootValueSeparator("\n")
+                .writeValues(response.getOutputStream())) {
+            memberRepository.exportAll(dto -> write(writer, dto));
+        }
+    }
+
+    // 나이를 하나 올린다. 락 방식은 lock 파라미터로 고른다. (PESSIMISTIC, OPTIMISTIC)
+    // http://localhost:8080/members/member1/age-plus?lock=OPTIMISTIC
+    @PostMapping("/members/{username}/age-plus")
+    public int agePlus(@PathVariable("username") String username,
+                       @RequestParam(value = "lock", defaultValue = "OPTIMISTIC") LockMode lock) {
+        return memberUpdateRepository.updateByUsername(username, member -> member.setAge(member.getAge() + 1), lock);
+    }
+
+    // age 이상인 회원 나이를 하나씩 올린다. id 범위 chunkSize개씩 나눠서 청크마다 커밋한다.
+    // 중간에 실패하면 같은 age에 resume=true로 다시 부르면 끝난 청크는 건너뛴다. resume 없이 부르면 409. 버리려면 DELETE.
+    // parallelism은 벌크 전용 스레드 풀 크기(커넥션 풀 - repository.bulk.reserved-connections)까지만 쓴다.
+    // http://localhost:8080/members/bulk-age-plus?age=20&chunkSize=1000&parallelism=2
+    @PostMapping("/members/bulk-age-plus")
+    public BulkProgress bulkAgePlus(@RequestParam("age") int age,
+                                    @RequestParam(value = "resume", defaultValue = "false") boolean resume,
+                                    @RequestParam(value = "chunkSize", defaultValue = "1000") int chunkSize,
+                                    @RequestParam(value = "parallelism", defaultValue = "1") int parallelism) {
+        try {
+            return memberBulkRepository.bulkAgePlus(age, resume, chunkSize, parallelism, null);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+    }
+
+    @DeleteMapping("/members/bulk-age-plus")
+    public void discardBulkAgePlus(@RequestParam("age") int age) {
+        memberBulkRepository.discardBulkAgePlus(age);
+    }
+
+    // 전체 회원 수, 나이별 / 팀별 회원 수, 팀 수. 쿼리 없이 메모리 카운터(MemberAggregates)에서 꺼낸다.
+    // 아직 못 셌거나 꺼져 있으면(member.aggregates.enabled) 503.
+    @GetMapping("/members/stats")
+    public MemberAggregates.Snapshot stats() {
+        if (!memberAggregates.isLoaded()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "member aggregates are not loaded");
+        }
+        return memberAggregates.snapshot();
+    }
+
+    // 낙관적 락 시도 / 충돌 / 재시도 실패 횟수와 충돌률.
+    @GetMapping("/members/lock/stats")
+    public OptimisticLockRetryTemplate.Stats lockStats() {
+        return optimisticLockRetryTemplate.stats();
+    }
+
+    private void write(SequenceWriter writer, MemberDto dto) {
+        try {
+            writer.write(dto);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MemberCursor decode(String cursor) {
+        try {
+            return MemberCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
     }
 
 
@@ -93,8 +298,8 @@ public class MemberController {
 
 //    @PostConstruct
     public void init() {
-        for (int i = 0; i < 100; i++) {
-            memberRepository.save(new Member("user" + i, i));
-        }
+        // save를 하나씩 부르면 insert 한 번에 시퀀스 조회까지 따라 나간다. 대량이면 importAll로 배치 insert.
+        memberRepository.importAll(IntStream.range(0, 100)
+                .mapToObj(i -> new MemberImport("user" + i, i, null)));
     }
 }
@@ -0,0 +1,21 @@
+package study.datajpa.dto;
+
+import lombok.Getter;
+
+import java.util.List;
+
+// 커서 페이징 응답. Page와 달리 토탈 카운트도, 페이지 번호도 없다.
+// 다음 페이지를 보고 싶으면 nextCursor를 그대로 다시 넘기면 된다. 마지막 페이지면 null.
+@Getter
+public class CursorPage<T> {
+
+    private final List<T> content;
+    private final String nextCursor;
+    private final boolean hasNext;
+
+    public CursorPage(List<T> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+        this.hasNext = nextCursor != null;
+    }
+}
@@ -0,0 +1,53 @@
+package study.datajpa.dto;
+
+import lombok.Getter;
+import study.datajpa.entity.Member;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// 커서(keyset) 페이징에서 "마지막으로 본 위치"를 담는 값.
+// 클라이언트에게는 (username, id)를 그대로 보여주지 않고 불투명한 토큰 문자열로 넘긴다.
+@Getter
+public class MemberCursor {
+
+    private final String username;
+    private final Long id;
+
+    public MemberCursor(String username, Long id) {
+        this.username = username;
+        this.id = id;
+    }
+
+    public static MemberCursor of(Member member) {
+        return new MemberCursor(member.getUsername(), member.getId());
+    }
+
+    // id에는 ':'가 들어갈 수 없으니 첫 번째 ':' 기준으로 자르면 username에 뭐가 들어있든 복원된다.
+    public String encode() {
+        String raw = id + ":" + username;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MemberCursor decode(String token) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("잘못된 커서입니다. cursor = " + token, e);
+        }
+
+        int separator = raw.indexOf(':');
+        if (separator < 1) {
+            throw new IllegalArgumentException("잘못된 커서입니다. cursor = " + token);
+        }
+
+        try {
+            Long id = Long.valueOf(raw.substring(0, separator));
+            return new MemberCursor(raw.substring(separator + 1), id);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("잘못된 커서입니다. cursor = " + token, e);
+        }
+    }
+}
@@ -20,5 +20,8 @@ public class MemberDto {
     public MemberDto(Member member) {
         this.id = member.getId();
         this.username = member.getUsername();
+        // getTeam()은 프록시라서 쿼리가 안 나가고, getName()에서 프록시가 초기화된다.
+        // 페이지 안의 다른 회원 팀 프록시도 같이 in 쿼리 한 번으로 초기화된다. (Team의 @BatchSize)
+        this.teamName = member.getTeam() != null ? member.getTeam().getName() : null;
     }
 }
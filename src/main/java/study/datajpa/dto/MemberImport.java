@@ -0,0 +1,18 @@
+package study.datajpa.dto;
+
+import lombok.Getter;
+
+// 대량 등록(importAll)용 한 줄. 팀은 이름으로 넘기고, 없는 팀이면 새로 만든다. 팀이 없으면 null.
+@Getter
+public class MemberImport {
+
+    private final String username;
+    private final int age;
+    private final String teamName;
+
+    public MemberImport(String username, int age, String teamName) {
+        this.username = username;
+        this.age = age;
+        this.teamName = teamName;
+    }
+}
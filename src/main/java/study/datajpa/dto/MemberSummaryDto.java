@@ -0,0 +1,22 @@
+package study.datajpa.dto;
+
+import lombok.Getter;
+
+import java.util.List;
+
+// /members/summary 응답. 서로 상관없는 조회 네 개를 한 번에 보여 준다.
+@Getter
+public class MemberSummaryDto {
+
+    private final List<MemberDto> members; // username이 같은 회원
+    private final List<MemberDto> sameAge; // 나이가 같은 회원 (앞에서 몇 명만)
+    private final long sameAgeCount;
+    private final long totalCount;
+
+    public MemberSummaryDto(List<MemberDto> members, List<MemberDto> sameAge, long sameAgeCount, long totalCount) {
+        this.members = members;
+        this.sameAge = sameAge;
+        this.sameAgeCount = sameAgeCount;
+        this.totalCount = totalCount;
+    }
+}
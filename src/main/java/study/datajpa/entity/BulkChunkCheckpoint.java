@@ -0,0 +1,40 @@
+package study.datajpa.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+// 청크 단위 벌크 업데이트(BulkUpdateEngine)에서 끝난 청크 기록.
+// 청크 업데이트와 같은 트랜잭션에서 저장된다. 그래서 이 row가 있으면 그 청크는 반영된 것이고, 없으면 반영 안 된 것이다.
+// 작업이 다 끝나면 지운다. 중간에 실패하면 남아 있다가 같은 이름으로 다시 돌릴 때 건너뛰는 데 쓴다.
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Table(indexes = @Index(name = "idx_bulk_chunk_job", columnList = "job_name"))
+public class BulkChunkCheckpoint {
+
+    @Id
+    private String id; // jobName:startId
+    @Column(name = "job_name")
+    private String jobName;
+    private long startId;
+    private long endId;
+    private int rowCount;
+    private LocalDateTime completedDate;
+
+    public BulkChunkCheckpoint(String jobName, long startId, long endId, int rowCount, LocalDateTime completedDate) {
+        this.id = jobName + ":" + startId;
+        this.jobName = jobName;
+        this.startId = startId;
+        this.endId = endId;
+        this.rowCount = rowCount;
+        this.completedDate = completedDate;
+    }
+}
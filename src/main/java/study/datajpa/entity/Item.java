@@ -36,6 +36,10 @@ public class Item implements Persistable<String> {
         return id;
     }
 
+    public LocalDateTime getCreatedDate() {
+        return createdDate;
+    }
+
     // 새것인지 아닌지 로직을 직접 만들어서 짜야한다.
     @Override
     public boolean isNew() {
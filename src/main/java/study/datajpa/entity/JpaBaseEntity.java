@@ -1,6 +1,7 @@
 package study.datajpa.entity;
 
 import lombok.Getter;
+import study.datajpa.support.CoarseClock;
 
 import javax.persistence.Column;
 import javax.persistence.MappedSuperclass;
@@ -20,14 +21,14 @@ public class JpaBaseEntity {
     @PrePersist
     public void prePersist() {
         // persist 하기 전 이벤트 발생
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = CoarseClock.now(); // LocalDateTime.now()를 엔티티마다 부르지 않는다.
         createdDate = now;
         updatedDate = now;
     }
 
     @PreUpdate // update 하기 전 이벤트 발생
     public void preUpdate() {
-        updatedDate = LocalDateTime.now();
+        updatedDate = CoarseClock.now();
     }
 
 }
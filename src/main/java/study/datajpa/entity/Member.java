@@ -1,6 +1,8 @@
 package study.datajpa.entity;
 
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 
@@ -13,15 +15,25 @@ import javax.persistence.*;
         query = "select m from Member m where m.username = :username"
 ) // 실무에선 잘 사용하지 않는다. 리포지토리에 쿼리를 바로 지정하는 기능이 더 좋기 때문. 장점은 애플리케이션 로딩 시점에 문법 오류를 알려준다.
 @NamedEntityGraph(name = "Member.all", attributeNodes = @NamedAttributeNode("team")) // 실무에서는 잘 안 쓰긴 한다.
+@Table(indexes = @Index(name = "idx_member_username_id", columnList = "username, member_id")) // 커서 페이징 (username, id) 순서 그대로 인덱스.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE) // username 조회 캐시(MemberQueryCache)가 id만 들고 있어서, id로 꺼낼 때 DB까지 안 가도록 2차 캐시에 올린다.
 public class Member extends BaseTimeEntity {
 
     @Id
-    @GeneratedValue
+    // AUTO(hibernate_sequence)는 insert 할 때마다 시퀀스를 한 번씩 더 조회한다.
+    // 엔티티별 시퀀스에 allocationSize만큼 id를 미리 떼어 와서(pooled-lo) 메모리에서 나눠 준다. 대량 insert 때 시퀀스 왕복이 거의 없어진다.
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_seq_generator")
+    @SequenceGenerator(name = "member_seq_generator", sequenceName = "member_seq", allocationSize = 50)
     @Column(name = "member_id")
     private Long id;
     private String username;
     private int age;
 
+    // 낙관적 락. update / delete 할 때 "where member_id=? and version=?"로 나가고, 그 사이 다른 트랜잭션이 먼저 바꿨으면 OptimisticLockException.
+    @Version
+    private Long version;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "team_id")
     private Team team;
@@ -1,6 +1,11 @@
 package study.datajpa.entity;
 
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
 import javax.persistence.*;
 import java.util.ArrayList;
@@ -10,14 +15,31 @@ import java.util.List;
 @Getter @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "name"})
+// 팀은 거의 안 바뀌고 읽기만 많다. 2차 캐시에 올려서 member.getTeam() 프록시 초기화나 em.find가 DB까지 안 가게 한다.
+// 리전 크기와 만료 시간은 ehcache.xml. JPQL 벌크 연산이 나가면 하이버네이트가 관련 리전을 알아서 비운다.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+// member.getTeam() 프록시를 하나 초기화할 때 영속성 컨텍스트에 있는 다른 팀 프록시도 최대 1000개까지 in 쿼리 한 번으로 같이 초기화한다.
+@BatchSize(size = 1000)
 public class Team extends JpaBaseEntity {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "team_seq_generator")
+    @SequenceGenerator(name = "team_seq_generator", sequenceName = "team_seq", allocationSize = 50)
     @Column(name = "team_id")
     private Long id;
     private String name;
 
+    @Version
+    private Long version;
+
+    // 컬렉션 캐시에는 멤버 id만 들어간다. 멤버 엔티티 자체는 다시 조회해야 한다.
+    // mappedBy 쪽이라 회원의 FK가 바뀌어도 하이버네이트가 이 캐시를 안 건드린다. auto_evict_collection_cache(application.yml)로 엔티티 변경 때 지우고,
+    // 엔티티 이벤트가 안 나가는 벌크 delete / 팀 변경은 TeamMembersCacheEvictor가 지운다.
+    // 팀 목록을 조회하고 getMembers()를 처음 건드리면 팀 목록 조회 쿼리를 서브쿼리로 넣어서 모든 팀의 멤버를 한 번에 가져온다.
+    // teams.forEach(t -> t.getMembers()) 해도 쿼리는 2번. (팀 목록 1번 + 멤버 1번)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+    @Fetch(FetchMode.SUBSELECT)
     @OneToMany(mappedBy = "team")
     private List<Member> members = new ArrayList<>();
 
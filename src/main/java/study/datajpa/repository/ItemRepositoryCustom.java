@@ -0,0 +1,16 @@
+package study.datajpa.repository;
+
+import study.datajpa.entity.Item;
+
+import java.util.Collection;
+
+// save()는 id가 있는 Item을 새 엔티티로 못 알아보면 merge로 간다. merge는 row마다 select를 먼저 날린다.
+// 외부 id로 대량 수집할 때는 이쪽을 쓴다. 영속성 컨텍스트를 안 거치고 JDBC 배치로 바로 쓴다. (조회한 Item이 영속성 컨텍스트에 있었다면 그건 갱신되지 않는다)
+public interface ItemRepositoryCustom {
+
+    // 새 Item만 넣는다. 이미 있는 id가 있으면 DuplicateKeyException. 넣은 개수를 반환한다.
+    int insertAll(Collection<Item> items);
+
+    // 없으면 넣고 있으면 그대로 둔다. (등록일은 처음 넣었을 때 값이 유지된다) select 없이 merge 한 번.
+    int upsertAll(Collection<Item> items);
+}
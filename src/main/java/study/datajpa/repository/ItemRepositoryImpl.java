@@ -0,0 +1,79 @@
+package study.datajpa.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import study.datajpa.entity.Item;
+import study.datajpa.support.CoarseClock;
+import study.datajpa.repository.support.StripedLocks;
+import study.datajpa.repository.support.TransactionCallbacks;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@RequiredArgsConstructor
+public class ItemRepositoryImpl implements ItemRepositoryCustom {
+
+    // hibernate.jdbc.batch_size와 맞춘다.
+    private static final int BATCH_SIZE = 100;
+
+    private static final String INSERT_SQL = "insert into item (id, created_date) values (?, ?)";
+    // H2 merge ... key(id): id가 있으면 update, 없으면 insert. 등록일은 기존 값이 있으면 그걸 다시 넣는다.
+    private static final String UPSERT_SQL = "merge into item (id, created_date) key (id)" +
+            " values (?, coalesce((select i.created_date from item i where i.id = ?), ?))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StripedLocks itemLocks;
+
+    @Override
+    @Transactional
+    public int insertAll(Collection<Item> items) {
+        List<String> ids = ids(items);
+        lockUntilCompletion(ids);
+        Timestamp now = Timestamp.valueOf(CoarseClock.now());
+        return sum(jdbcTemplate.batchUpdate(INSERT_SQL, ids, BATCH_SIZE, (ps, id) -> {
+            ps.setString(1, id);
+            ps.setTimestamp(2, now);
+        }));
+    }
+
+    @Override
+    @Transactional
+    public int upsertAll(Collection<Item> items) {
+        List<String> ids = ids(items);
+        lockUntilCompletion(ids);
+        Timestamp now = Timestamp.valueOf(CoarseClock.now());
+        return sum(jdbcTemplate.batchUpdate(UPSERT_SQL, ids, BATCH_SIZE, (ps, id) -> {
+            ps.setString(1, id);
+            ps.setString(2, id);
+            ps.setTimestamp(3, now);
+        }));
+    }
+
+    // 같은 id를 동시에 만들려는 스레드끼리는 여기서 줄을 세운다. 커밋(또는 롤백)이 끝나야 풀어 준다.
+    // 먼저 푼 뒤에 커밋하면 그 사이에 다른 스레드가 들어와서 똑같은 id로 부딪힌다.
+    private void lockUntilCompletion(List<String> ids) {
+        StripedLocks.Held held = itemLocks.lockAll(ids);
+        TransactionCallbacks.afterCompletion(held::unlock);
+    }
+
+    private static List<String> ids(Collection<Item> items) {
+        return items.stream()
+                .map(Item::getId)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    private static int sum(int[][] counts) {
+        int total = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                // 드라이버가 개수를 모르면 SUCCESS_NO_INFO(-2)가 온다. 그 때는 1개로 센다.
+                total += count >= 0 ? count : 1;
+            }
+        }
+        return total;
+    }
+}
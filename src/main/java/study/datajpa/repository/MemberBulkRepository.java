@@ -0,0 +1,37 @@
+package study.datajpa.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+import study.datajpa.repository.support.BulkProgress;
+import study.datajpa.repository.support.BulkUpdateEngine;
+
+import java.util.function.Consumer;
+
+// MemberRepository의 벌크 연산을 청크로 나눠서 BulkUpdateEngine으로 실행한다.
+// 트랜잭션 안에서 부르면 안 된다. 청크마다 새 트랜잭션으로 커밋하기 때문에 바깥 트랜잭션이 롤백돼도 이미 끝난 청크는 되돌아가지 않는다.
+@Repository
+@RequiredArgsConstructor
+public class MemberBulkRepository {
+
+    private final MemberRepository memberRepository;
+    private final BulkUpdateEngine bulkUpdateEngine;
+
+    // memberRepository.bulkAgePlus(age). 작업 이름이 나이별로 같다.
+    // 실패 후 같은 나이에 resume으로 다시 부르면 이어서 한다. resume 없이 부르면 남은 기록이 있을 때 IllegalStateException.
+    public BulkProgress bulkAgePlus(int age, boolean resume, int chunkSize, int parallelism, Consumer<BulkProgress> listener) {
+        return bulkUpdateEngine.run(bulkAgePlusJob(age), resume,
+                memberRepository.findMinId(), memberRepository.findMaxId(),
+                chunkSize, parallelism,
+                (fromId, toId) -> memberRepository.bulkAgePlusInRange(age, fromId, toId),
+                listener);
+    }
+
+    // 실패한 bulkAgePlus를 이어서 하지 않고 버린다. 다음 실행은 처음부터 한다.
+    public void discardBulkAgePlus(int age) {
+        bulkUpdateEngine.discard(bulkAgePlusJob(age));
+    }
+
+    private static String bulkAgePlusJob(int age) {
+        return "member.bulkAgePlus:" + age;
+    }
+}
@@ -2,6 +2,7 @@ package study.datajpa.repository;
 
 import org.springframework.stereotype.Repository;
 import study.datajpa.entity.Member;
+import study.datajpa.repository.support.CachedByUsername;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -51,6 +52,7 @@ public class MemberJpaRepository {
                 .getResultList();
     }
 
+    @CachedByUsername
     public List<Member> findByUsername(String username) {
         // 쿼리에 이름을 정해놓고 재활용하겠다는 것.
         return em.createNamedQuery("Member.findByUsername", Member.class)
@@ -60,13 +62,26 @@ public class MemberJpaRepository {
 
     // 컨텐츠 잘라서 가져오기
     public List<Member> findByPage(int age, int offset, int limit) {
-        return em.createQuery("select m from Member m where m.age = :age order by m.username desc") // 이름으로 내림차순.
+        return em.createQuery("select m from Member m where m.age = :age order by m.username desc, m.id desc") // 이름으로 내림차순. 이름이 같으면 id로.
                 .setParameter("age", age)
                 .setFirstResult(offset) // 어디서부터 가져올 것인지.
                 .setMaxResults(limit) // 개수를 몇 개 가져올 것인지.
                 .getResultList();
     }
 
+    // 커서(keyset) 방식. offset은 뒤로 갈수록 앞의 데이터를 다 읽고 버려야 해서 느려진다.
+    // 대신 이전 페이지의 마지막 (username, id)를 받아서 그 다음부터 가져온다. 첫 페이지는 findByPage(age, 0, limit)로 가져오면 된다.
+    public List<Member> findByPageAfter(int age, String username, Long id, int limit) {
+        return em.createQuery("select m from Member m where m.age = :age" +
+                        " and (m.username < :username or (m.username = :username and m.id < :id))" +
+                        " order by m.username desc, m.id desc", Member.class)
+                .setParameter("age", age)
+                .setParameter("username", username)
+                .setParameter("id", id)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
     // 토탈 카운트 가져오기. 소팅 필요 X
     public long totalCount(int age) {
         return em.createQuery("select count(m) from Member m where m.age = :age", Long.class)
@@ -77,7 +92,8 @@ public class MemberJpaRepository {
     // 한 방에 쿼리로 테이블의 모든 데이터 값 특정 변경
     public int bulkAgePlus(int age) {
         // 응답 값의 갯수가 반환된다.
-        return em.createQuery("update Member m set m.age = m.age + 1 where m.age >= :age") // age 보다 나이가 많은 사람 +1
+        // versioned: version도 같이 올린다. 낙관적 락으로 먼저 읽어 둔 쪽이 이 변경을 덮어쓰지 못하게.
+        return em.createQuery("update versioned Member m set m.age = m.age + 1 where m.age >= :age") // age 보다 나이가 많은 사람 +1
                 .setParameter("age", age)
                 .executeUpdate();
     }
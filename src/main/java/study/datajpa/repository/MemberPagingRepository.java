@@ -0,0 +1,51 @@
+package study.datajpa.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.support.CountQuery;
+import study.datajpa.repository.support.MemberAggregates;
+import study.datajpa.repository.support.PagingExecutor;
+import study.datajpa.repository.support.TotalCountMode;
+
+// MemberRepository의 Page 메서드들을 컨텐츠 쿼리 / 카운트 쿼리로 나눠서 PagingExecutor로 실행한다.
+// 반환 값은 원래 메서드와 똑같이 Page라서 컨트롤러에서는 그대로 바꿔 끼우면 된다.
+@Repository
+@RequiredArgsConstructor
+public class MemberPagingRepository {
+
+    private static final String MEMBER_TABLE = "member";
+
+    private final MemberRepository memberRepository;
+    private final PagingExecutor pagingExecutor;
+    private final MemberAggregates memberAggregates;
+
+    // memberRepository.findAll(pageable)
+    public Page<Member> findAll(Pageable pageable, TotalCountMode mode) {
+        return pagingExecutor.page(pageable,
+                () -> memberRepository.findListBy(pageable),
+                CountQuery.of(MEMBER_TABLE, CountQuery.ALL, memberRepository::count)
+                        .withAggregate(memberAggregates::memberCount),
+                mode);
+    }
+
+    // memberRepository.findByAge(age, pageable). 카운트도 나이 조건으로 센다.
+    public Page<Member> findByAge(int age, Pageable pageable, TotalCountMode mode) {
+        return pagingExecutor.page(pageable,
+                () -> memberRepository.findListByAge(age, pageable),
+                CountQuery.of(MEMBER_TABLE, "age:" + age, () -> memberRepository.countByAge(age))
+                        .withAggregate(() -> memberAggregates.memberCountByAge(age)),
+                mode);
+    }
+
+    // memberRepository.findByNativeProjection(pageable). 카운트 쿼리가 전체 카운트라서 findAll과 같은 캐시를 쓴다.
+    public Page<MemberProjection> findByNativeProjection(Pageable pageable, TotalCountMode mode) {
+        return pagingExecutor.page(pageable,
+                () -> memberRepository.findListByNativeProjection(pageable),
+                CountQuery.of(MEMBER_TABLE, CountQuery.ALL, memberRepository::count)
+                        .withAggregate(memberAggregates::memberCount),
+                mode);
+    }
+}
@@ -1,19 +1,22 @@
 package study.datajpa.repository;
 
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.transaction.annotation.Transactional;
 import study.datajpa.dto.MemberDto;
 import study.datajpa.entity.Member;
+import study.datajpa.repository.support.CachedByUsername;
 
 import javax.persistence.LockModeType;
 import javax.persistence.QueryHint;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 // 인터페이스이고 구현체가 없다. 구현 코드가 하나도 없다. 인터페이스만 있다.
 public interface MemberRepository extends JpaRepository<Member, Long>, MemberRepositoryCustom { // 인터페이스 상속받음으로 내가 만들고 싶은 기능을 구현한 다른 구현 Impl클래스에 있는게 실행
@@ -29,6 +32,7 @@ public interface MemberRepository extends JpaRepository<Member, Long>, MemberRep
 
     // @Param은 :username과 같이 명확히 jpql 이 적혀있을 때 필요하다.
 //    @Query(name = "Member.findByUsername") // jpql을 이걸로 찾아서 실행해준다. 근데 이걸 없애도 동작한다. 관례가 있기 때문. 해당 타입에 .을 찍고 메소드 이름으로 named query를 찾는다.
+    @CachedByUsername // 조회가 제일 많은 메서드들. 결과(id)를 캐시한다. (MemberQueryCache)
     List<Member> findByUsername(@Param("username") String username);
 
     // 실무에서 많이 사용하는 방법.
@@ -49,15 +53,27 @@ public interface MemberRepository extends JpaRepository<Member, Long>, MemberRep
     @Query("select new study.datajpa.dto.MemberDto(m.id, m.username, t.name) from Member m join m.team t")
     List<MemberDto> findMemberDto();
 
+    // id로 DTO 하나. 팀이 없는 회원도 나와야 해서 left join. (쓰기 트랜잭션 안에서 MemberBatchLoader.loadDto)
+    @Query("select new study.datajpa.dto.MemberDto(m.id, m.username, t.name) from Member m left join m.team t where m.id = :id")
+    Optional<MemberDto> findDtoById(@Param("id") Long id);
+
+    // 여러 id의 DTO를 in 쿼리 한 번으로. (MemberBatchLoader.loadDto)
+    @Query("select new study.datajpa.dto.MemberDto(m.id, m.username, t.name) from Member m left join m.team t where m.id in :ids")
+    List<MemberDto> findDtosByIds(@Param("ids") Collection<Long> ids);
+
     // 컬렉션으로 검색.
+    @CachedByUsername
     @Query("select m from Member m where m.username in :names")
     List<Member> findByNames(@Param("names") Collection<String> names);
 
 
     // 반환 타입을 아무거나 적어도 다 된다. 단건이라는게 보장만 된다면. 반환타입을 유연하게 지원해 준다.
     // 이 외에도 다양한 타입을 지원한다. 공홈 참고. 이터레이터, 컬렉터, 리스트, 스트림, 퓨처, 컴플리터블 퓨처, 슬라이스, 페이지 등 다 지원한다.
+    @CachedByUsername
     List<Member> findListByUsername(String username); // 컬렉션
+    @CachedByUsername
     Member findMemberByUsername(String username); // 단건
+    @CachedByUsername
     Optional<Member> findOptionalByUsername(String username); // 단건 Optional
 
     // 반환 타입을 Page로 받는다.
@@ -74,13 +90,43 @@ public interface MemberRepository extends JpaRepository<Member, Long>, MemberRep
 
     Slice<Member> findSlicedByAge(int age, Pageable pageable);
 
-    List<Member> findListByAge(int age, PageRequest pageRequest);
+    List<Member> findListByAge(int age, Pageable pageable);
+
+    // 카운트 쿼리를 컨텐츠 쿼리와 따로 날리고 싶을 때 쓴다. (MemberPagingRepository)
+    long countByAge(int age);
+
+    List<Member> findListBy(Pageable pageable);
+
+    // 커서(keyset) 페이징. offset으로 앞을 다 읽고 버리는 대신 마지막으로 본 (username, id) 다음부터 바로 찾아간다.
+    // where (username, id) < (:username, :id) 를 풀어서 쓴 것. (username, member_id) 인덱스를 타기 때문에 몇 페이지든 1페이지랑 비용이 같다.
+    // 개수는 PageRequest.of(0, size)로 넘긴다. 0페이지로만 넘기면 offset 없이 limit만 걸린다.
+    @Query("select m from Member m order by m.username desc, m.id desc")
+    List<Member> findFirstPage(Pageable pageable);
+
+    @Query("select m from Member m" +
+            " where m.username < :username or (m.username = :username and m.id < :id)" +
+            " order by m.username desc, m.id desc")
+    List<Member> findNextPage(@Param("username") String username, @Param("id") Long id, Pageable pageable);
 
     // 얘가 있어야 jpa executeUpdate를 호출한다. 그래야 변경된 값의 갯수를 받을 수 있다. 얘가 변경한다는 것도 알게 된다. 얘를 빼면 에러가 난다.
+    // versioned: version도 같이 올린다. 안 올리면 낙관적 락으로 먼저 읽어 둔 쪽이 나중에 커밋하면서 바뀐 나이를 덮어쓴다.
     @Modifying(clearAutomatically = true) // 쿼리가 나가고 난 다음에 영속성 컨텍스트의 em.clear 과정을 자동으로 해 준다.
-    @Query("update Member m set m.age = m.age + 1 where m.age >= :age")
+    @Query("update versioned Member m set m.age = m.age + 1 where m.age >= :age")
     int bulkAgePlus(@Param("age") int age);
 
+    // bulkAgePlus를 id 범위 [fromId, toId)로 잘라서 하는 버전. (MemberBulkRepository)
+    // versioned: 벌크 연산도 version을 올린다. 안 올리면 그 사이에 낙관적 락으로 읽어 둔 쪽이 바뀐 나이를 덮어쓴다.
+    @Modifying
+    @Query("update versioned Member m set m.age = m.age + 1" +
+            " where m.age >= :age and m.id >= :fromId and m.id < :toId")
+    int bulkAgePlusInRange(@Param("age") int age, @Param("fromId") long fromId, @Param("toId") long toId);
+
+    @Query("select min(m.id) from Member m")
+    Long findMinId();
+
+    @Query("select max(m.id) from Member m")
+    Long findMaxId();
+
     @Query("select m from Member m left join fetch m.team") // fetch join ---> 연관된 팀을 한방 쿼리로 다 긁어온다.
     List<Member> findMemberFetchJoin();
 
@@ -100,7 +146,10 @@ public interface MemberRepository extends JpaRepository<Member, Long>, MemberRep
 
 
     // jpa 제공 queryhint.
+    // 읽기 전용 트랜잭션이라서 레플리카가 있으면 레플리카에서 읽는다. (ReplicaRoutingDataSource)
+    // 바깥에 쓰기 트랜잭션이 있으면 거기에 참여하기 때문에 프라이머리에서 읽는다.
     @QueryHints(value = @QueryHint(name = "org.hibernate.readOnly", value = "true"))
+    @Transactional(readOnly = true)
     Member findReadOnlyByUsername(String username);
 
     //select for update. 비관적인 lock. select 할 때 다른 애들 손대지 말라는 lock을 걸 수 있다.
@@ -110,6 +159,29 @@ public interface MemberRepository extends JpaRepository<Member, Long>, MemberRep
     @Lock(LockModeType.PESSIMISTIC_WRITE) // jpa 거라는 것.
     List<Member> findLockByUsername(String username);
 
+    // 낙관적 락. 락 없이 읽고, 커밋할 때 읽은 회원의 version이 그대로인지 확인한다. (바꾼 회원은 update 문에서 확인)
+    // 충돌하면 OptimisticLockRetryTemplate으로 다시 읽어서 다시 적용한다. (MemberUpdateRepository)
+    @Lock(LockModeType.OPTIMISTIC)
+    List<Member> findOptimisticLockByUsername(String username);
+
+    // 비동기 조회. repositoryExecutor 스레드에서 실행되고 바로 CompletableFuture를 돌려준다.
+    // 서로 상관없는 조회 여러 개를 한 번에 날려 놓고 AsyncQueries로 모으면 가장 느린 쿼리만큼만 걸린다.
+    // 다른 스레드에서 트랜잭션이 끝나기 때문에 돌려받은 엔티티는 준영속이다. 지연 로딩이 안 되니까 필요한 연관관계는 엔티티 그래프로 같이 가져온다.
+    @Async("repositoryExecutor")
+    @EntityGraph(attributePaths = {"team"})
+    CompletableFuture<List<Member>> findAsyncByUsername(String username);
+
+    @Async("repositoryExecutor")
+    @EntityGraph(attributePaths = {"team"})
+    CompletableFuture<List<Member>> findAsyncByAge(int age, Pageable pageable);
+
+    @Async("repositoryExecutor")
+    CompletableFuture<Long> countAsyncByAge(int age);
+
+    @Async("repositoryExecutor")
+    @Query("select count(m) from Member m")
+    CompletableFuture<Long> countAsync();
+
     // Projections. 반환 타입에 방금 만든 UsernameOnly를 넣으면 된다.
     // 프록시 객체가 담겨서 오게 된다.
 //    List<UsernameOnly> findProjectionsByUsername(@Param("username") String username);
@@ -128,10 +200,17 @@ public interface MemberRepository extends JpaRepository<Member, Long>, MemberRep
     // projection을 사용.
     // 정적 쿼리를 네이티브로 쓸 때는 projection 기능을 통해 할 수 있다. 매칭을 하면 프로젝션 기능을 그대로 쓰면 된다.
     // 페이징이 된다는 장점이 있다.
+    // 네이티브 쿼리는 on 절을 빼먹어도 애플리케이션 로딩 시점에 못 잡는다. on이 없으면 회원 x 팀 카테시안 곱이 된다. (NativeQueryValidator)
     @Query(value = "select m.member_id as id, m.username, t.name as teamName " +
-            "from member m left join team t",
+            "from member m left join team t on m.team_id = t.team_id",
             countQuery = "select count(*) from member",
             nativeQuery = true)
     Page<MemberProjection> findByNativeProjection(Pageable pageable);
 
+    // 위와 같은 쿼리인데 카운트 쿼리 없이 컨텐츠만 가져온다.
+    @Query(value = "select m.member_id as id, m.username, t.name as teamName " +
+            "from member m left join team t on m.team_id = t.team_id",
+            nativeQuery = true)
+    List<MemberProjection> findListByNativeProjection(Pageable pageable);
+
 }
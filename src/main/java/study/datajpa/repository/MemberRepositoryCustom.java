@@ -1,8 +1,12 @@
 package study.datajpa.repository;
 
+import study.datajpa.dto.MemberDto;
+import study.datajpa.dto.MemberImport;
 import study.datajpa.entity.Member;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 // 커스텀으로 만들고 싶은 메서드들 작성한 인터페이스. 주로 query dsl같은 거 사용할 때 많이 쓴다.
 // 그리고 구현체에 내가 만들고 싶은 대로 자세히 작성한다.
@@ -10,4 +14,10 @@ import java.util.List;
 // 실무에서 많이 사용.
 public interface MemberRepositoryCustom {
     List<Member> findMemberCustom();
+
+    // 대량 등록. JDBC 배치로 묶어서 insert 하고 일정 개수마다 등록한 회원을 영속성 컨텍스트에서 뗀다. 등록한 회원 수를 반환한다.
+    long importAll(Stream<MemberImport> members);
+
+    // 전체 회원을 한 줄씩 DTO로 만들어서 sink에 바로 넘긴다. List에 모으지 않기 때문에 회원이 몇 명이든 메모리가 일정하다. 넘긴 개수를 반환한다.
+    long exportAll(Consumer<MemberDto> sink);
 }
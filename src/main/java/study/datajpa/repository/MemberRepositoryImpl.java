@@ -1,16 +1,37 @@
 package study.datajpa.repository;
 
 import lombok.RequiredArgsConstructor;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.transaction.annotation.Transactional;
+import study.datajpa.dto.MemberDto;
+import study.datajpa.dto.MemberImport;
 import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
 
 import javax.persistence.EntityManager;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 // 이름은 꼭 ~~Impl로 맞춰야 한다. 그것이 규칙이다. 그래야 MemberRepository에서 읽을 수 있다. Custom은 아무거나 써도 되는데 Impl은 필수이다. 그럼 스프링 데이터 jpa가 call 했을 때 구현체로 Impl을 찾아서 호출해 준다.
 // 실무에서 많이 사용.
 @RequiredArgsConstructor
 public class MemberRepositoryImpl implements MemberRepositoryCustom {
 
+    // hibernate.jdbc.batch_size와 맞춘다. 배치 하나가 꽉 찰 때마다 flush 하고 그 배치에서 등록한 회원만 영속성 컨텍스트에서 뗀다.
+    private static final int IMPORT_FLUSH_SIZE = 100;
+    // 내보내기 할 때 JDBC 드라이버가 한 번에 받아오는 row 수.
+    private static final int EXPORT_FETCH_SIZE = 500;
+
     // 여기서 쓰고싶은 대로 만들어서 쓴다.
     private final EntityManager em;
 
@@ -19,4 +40,88 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom {
         return em.createQuery("select m from Member m")
                 .getResultList();
     }
+
+    // 바깥 트랜잭션에 참여해도 된다. em.clear()를 안 하고 여기서 등록한 회원만 detach 하기 때문에 호출한 쪽 엔티티는 그대로 영속 상태다.
+    // 단, 회원은 setTeam으로 FK만 채우고 team.getMembers()는 안 건드린다. 호출한 쪽이 이미 getMembers()를 로딩해 둔 팀이면
+    // 그 컬렉션에는 새 회원이 안 보인다. (2차 캐시의 Team.members는 auto_evict_collection_cache가 지운다) 다시 조회하거나 em.refresh 한다.
+    @Override
+    @Transactional
+    public long importAll(Stream<MemberImport> members) {
+        // 팀은 id만 들고 있다가 getReference로 프록시만 꺼낸다. (select 안 나감)
+        Map<String, Long> teamIds = new HashMap<>();
+        List<Member> batch = new ArrayList<>(IMPORT_FLUSH_SIZE);
+        long count = 0;
+
+        Iterator<MemberImport> iterator = members.iterator();
+        while (iterator.hasNext()) {
+            MemberImport row = iterator.next();
+            Member member = new Member(row.getUsername(), row.getAge());
+            if (row.getTeamName() != null) {
+                // changeTeam은 team.getMembers()를 건드려서 컬렉션을 로딩한다. 여기서는 FK만 채우면 되기 때문에 setTeam.
+                Long teamId = teamIds.computeIfAbsent(row.getTeamName(), this::findOrCreateTeamId);
+                member.setTeam(em.getReference(Team.class, teamId));
+            }
+            em.persist(member);
+            batch.add(member);
+            count++;
+
+            if (batch.size() == IMPORT_FLUSH_SIZE) {
+                flushAndDetach(batch);
+            }
+        }
+
+        flushAndDetach(batch);
+        return count;
+    }
+
+    private void flushAndDetach(List<Member> batch) {
+        em.flush();
+        batch.forEach(em::detach);
+        batch.clear();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportAll(Consumer<MemberDto> sink) {
+        // 스테이트리스 세션은 영속성 컨텍스트(1차 캐시)가 없다. 읽은 row가 어디에도 쌓이지 않는다.
+        // 거기에 DTO로 바로 조회하고 스크롤(커서)로 한 줄씩 넘기면 테이블 크기와 상관없이 메모리가 일정하다.
+        // 커넥션은 따로 열지 않고 지금 트랜잭션의 커넥션을 쓴다. 그래야 읽기 전용 트랜잭션 안에서 돌고 커넥션 풀 몫도 하나로 끝난다.
+        SessionFactory sessionFactory = em.getEntityManagerFactory().unwrap(SessionFactory.class);
+        Connection connection = em.unwrap(SessionImplementor.class).connection();
+        StatelessSession session = sessionFactory.openStatelessSession(connection);
+        try {
+            ScrollableResults results = session.createQuery(
+                            "select new study.datajpa.dto.MemberDto(m.id, m.username, t.name)" +
+                                    " from Member m left join m.team t")
+                    .setFetchSize(EXPORT_FETCH_SIZE)
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                long count = 0;
+                while (results.next()) {
+                    sink.accept((MemberDto) results.get(0));
+                    count++;
+                }
+                return count;
+            } finally {
+                results.close();
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    private Long findOrCreateTeamId(String teamName) {
+        List<Long> ids = em.createQuery("select t.id from Team t where t.name = :name", Long.class)
+                .setParameter("name", teamName)
+                .setMaxResults(1)
+                .getResultList();
+        if (!ids.isEmpty()) {
+            return ids.get(0);
+        }
+
+        Team team = new Team(teamName);
+        em.persist(team); // 시퀀스 전략이라 persist 시점에 id가 나온다.
+        return team.getId();
+    }
 }
@@ -0,0 +1,35 @@
+package study.datajpa.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.support.LockMode;
+import study.datajpa.repository.support.OptimisticLockRetryTemplate;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+// username으로 회원을 찾아서 change를 적용한다. 변경 감지로 update가 나간다.
+// 충돌을 막는 방법은 LockMode로 고른다. 같은 회원을 동시에 많이 바꾸는 경우에는 OPTIMISTIC이 락 대기가 없어서 처리량이 높다.
+// OPTIMISTIC이면 충돌할 때마다 change가 다시 불리기 때문에 change는 여러 번 불려도 되는 코드여야 한다. (현재 값을 읽어서 바꾸는 식)
+@Repository
+@RequiredArgsConstructor
+public class MemberUpdateRepository {
+
+    private final MemberRepository memberRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final OptimisticLockRetryTemplate optimisticLockRetryTemplate;
+
+    public int updateByUsername(String username, Consumer<Member> change, LockMode mode) {
+        if (mode == LockMode.PESSIMISTIC) {
+            return transactionTemplate.execute(status -> apply(memberRepository.findLockByUsername(username), change));
+        }
+        return optimisticLockRetryTemplate.execute(() -> apply(memberRepository.findOptimisticLockByUsername(username), change));
+    }
+
+    private static int apply(List<Member> members, Consumer<Member> change) {
+        members.forEach(change);
+        return members.size();
+    }
+}
@@ -0,0 +1,41 @@
+package study.datajpa.repository.support;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+// 비동기 리포지토리 메서드 결과를 모으는 유틸.
+// 쿼리를 전부 먼저 날려 놓고 나서 join 해야 동시에 돈다. 하나 날리고 join, 또 날리고 join 하면 순서대로 도는 것과 같다.
+public final class AsyncQueries {
+
+    private AsyncQueries() {
+    }
+
+    public static <A, B, R> R join(CompletableFuture<A> a, CompletableFuture<B> b, BiFunction<A, B, R> combiner) {
+        return join(a.thenCombine(b, combiner));
+    }
+
+    public static <T> List<T> joinAll(List<CompletableFuture<T>> futures) {
+        return join(CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(done -> futures.stream()
+                        .map(CompletableFuture::join)
+                        .collect(Collectors.toList())));
+    }
+
+    // 쿼리에서 난 예외를 CompletionException에 싸지 않고 그대로 던진다. 동기 메서드를 부를 때랑 똑같이 처리할 수 있다.
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.Transaction;
+import org.hibernate.type.Type;
+import org.springframework.data.annotation.CreatedBy;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedBy;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.auditing.DateTimeProvider;
+import org.springframework.data.domain.AuditorAware;
+
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// auditing.fast-path 모드에서 AuditingEntityListener 대신 @CreatedDate, @LastModifiedDate, @CreatedBy, @LastModifiedBy를 채운다.
+// 리스너는 엔티티마다 리플렉션으로 필드를 찾아서 값을 넣는다. 여기서는 엔티티 클래스별로 컬럼 위치를 한 번만 찾아 두고,
+// 하이버네이트가 insert / update 하려고 만든 상태 배열에 바로 넣는다.
+// 시간 / 등록자는 flush 한 번에 한 번만 구해서 그 flush에서 나가는 엔티티 전부에 같은 값을 넣는다. flush 밖(persist)에서는 그때그때 구한다.
+// 리스너와 똑같이 등록할 때 수정일 / 수정자도 같이 채운다.
+// 인터셉터 하나를 모든 세션이 같이 쓴다. flush 중인 값은 스레드에 둔다.
+public class AuditingInterceptor extends EmptyInterceptor {
+
+    private final DateTimeProvider dateTimeProvider;
+    private final AuditorAware<?> auditorAware;
+    private final Map<Class<?>, AuditedProperties> properties = new ConcurrentHashMap<>();
+    private final ThreadLocal<Stamp> flushStamp = new ThreadLocal<>();
+
+    public AuditingInterceptor(DateTimeProvider dateTimeProvider, AuditorAware<?> auditorAware) {
+        this.dateTimeProvider = dateTimeProvider;
+        this.auditorAware = auditorAware;
+    }
+
+    @Override
+    public void preFlush(Iterator entities) {
+        flushStamp.set(new Stamp());
+    }
+
+    @Override
+    public void postFlush(Iterator entities) {
+        flushStamp.remove();
+    }
+
+    // flush가 예외로 끝나면 postFlush가 안 불린다. 트랜잭션이 끝날 때 한 번 더 지운다.
+    @Override
+    public void afterTransactionCompletion(Transaction tx) {
+        flushStamp.remove();
+    }
+
+    @Override
+    public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+        AuditedProperties audited = propertiesOf(entity, propertyNames);
+        if (audited.isEmpty()) {
+            return false;
+        }
+        Stamp stamp = stamp();
+        Object now = stamp.now();
+        Object auditor = audited.hasAuditor() ? stamp.auditor() : null;
+        set(state, audited.createdDate, now);
+        set(state, audited.lastModifiedDate, now);
+        set(state, audited.createdBy, auditor);
+        set(state, audited.lastModifiedBy, auditor);
+        return true;
+    }
+
+    @Override
+    public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState,
+                                String[] propertyNames, Type[] types) {
+        AuditedProperties audited = propertiesOf(entity, propertyNames);
+        if (audited.lastModifiedDate < 0 && audited.lastModifiedBy < 0) {
+            return false;
+        }
+        Stamp stamp = stamp();
+        if (audited.lastModifiedDate >= 0) {
+            set(currentState, audited.lastModifiedDate, stamp.now());
+        }
+        if (audited.lastModifiedBy >= 0) {
+            set(currentState, audited.lastModifiedBy, stamp.auditor());
+        }
+        return true;
+    }
+
+    private Stamp stamp() {
+        Stamp stamp = flushStamp.get();
+        return stamp != null ? stamp : new Stamp();
+    }
+
+    private AuditedProperties propertiesOf(Object entity, String[] propertyNames) {
+        AuditedProperties audited = properties.get(entity.getClass());
+        if (audited == null) {
+            audited = properties.computeIfAbsent(entity.getClass(), type -> AuditedProperties.of(type, propertyNames));
+        }
+        return audited;
+    }
+
+    private static void set(Object[] state, int index, Object value) {
+        if (index >= 0) {
+            state[index] = value;
+        }
+    }
+
+    // 한 번 찍을 시간 / 등록자. 처음 쓸 때 구한다. (감사 컬럼이 있는 엔티티가 없는 flush는 시계를 안 읽는다)
+    private final class Stamp {
+        private LocalDateTime now;
+        private Object auditor;
+        private boolean auditorResolved;
+
+        private LocalDateTime now() {
+            if (now == null) {
+                now = dateTimeProvider.getNow().map(LocalDateTime::from).orElseGet(LocalDateTime::now);
+            }
+            return now;
+        }
+
+        private Object auditor() {
+            if (!auditorResolved) {
+                auditor = auditorAware.getCurrentAuditor().orElse(null);
+                auditorResolved = true;
+            }
+            return auditor;
+        }
+    }
+
+    // 상태 배열에서 감사 컬럼의 위치. 없으면 -1.
+    private static final class AuditedProperties {
+        private final int createdDate;
+        private final int lastModifiedDate;
+        private final int createdBy;
+        private final int lastModifiedBy;
+
+        private AuditedProperties(int createdDate, int lastModifiedDate, int createdBy, int lastModifiedBy) {
+            this.createdDate = createdDate;
+            this.lastModifiedDate = lastModifiedDate;
+            this.createdBy = createdBy;
+            this.lastModifiedBy = lastModifiedBy;
+        }
+
+        private static AuditedProperties of(Class<?> type, String[] propertyNames) {
+            return new AuditedProperties(
+                    indexOf(type, CreatedDate.class, propertyNames),
+                    indexOf(type, LastModifiedDate.class, propertyNames),
+                    indexOf(type, CreatedBy.class, propertyNames),
+                    indexOf(type, LastModifiedBy.class, propertyNames));
+        }
+
+        private static int indexOf(Class<?> type, Class<? extends Annotation> annotation, String[] propertyNames) {
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (field.isAnnotationPresent(annotation)) {
+                        return Arrays.asList(propertyNames).indexOf(field.getName());
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private boolean isEmpty() {
+            return createdDate < 0 && lastModifiedDate < 0 && createdBy < 0 && lastModifiedBy < 0;
+        }
+
+        private boolean hasAuditor() {
+            return createdBy >= 0 || lastModifiedBy >= 0;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package study.datajpa.repository.support;
+
+import lombok.Getter;
+import lombok.ToString;
+
+// 청크 단위 벌크 업데이트 진행 상황. 청크가 하나 끝날 때마다, 그리고 작업이 끝났을 때 만들어진다.
+@Getter
+@ToString
+public class BulkProgress {
+
+    private final String jobName;
+    private final int totalChunks;
+    private final int completedChunks; // 이전 실행에서 끝난 청크 포함.
+    private final int skippedChunks; // 이전 실행에서 이미 끝나서 이번에 건너뛴 청크.
+    private final long updatedRows; // 이번 실행에서 바꾼 row 수.
+
+    public BulkProgress(String jobName, int totalChunks, int completedChunks, int skippedChunks, long updatedRows) {
+        this.jobName = jobName;
+        this.totalChunks = totalChunks;
+        this.completedChunks = completedChunks;
+        this.skippedChunks = skippedChunks;
+        this.updatedRows = updatedRows;
+    }
+
+    public boolean isFinished() {
+        return completedChunks == totalChunks;
+    }
+}
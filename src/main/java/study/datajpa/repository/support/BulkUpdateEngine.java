@@ -0,0 +1,223 @@
+package study.datajpa.repository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.BulkChunkCheckpoint;
+import study.datajpa.support.CoarseClock;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// update ... where 조건 한 방을 id 범위로 잘라서 청크마다 따로 커밋한다.
+// 한 문장으로 하면 조건에 걸리는 row 전부에 커밋할 때까지 락이 잡혀 있고, undo / redo도 한 트랜잭션에 다 쌓인다.
+// 청크로 나누면 락은 청크 하나 동안만 잡히고 그 사이사이에 다른 트랜잭션이 끼어들 수 있다.
+//
+// 청크가 끝나면 같은 트랜잭션에서 BulkChunkCheckpoint를 남긴다. 실패하면 거기서 멈추고, 같은 jobName에 resume으로 다시 돌리면 끝난 청크는 건너뛴다.
+// resume 없이 돌리는데 그 jobName의 기록이 남아 있으면 돌리지 않는다. 예전 실행의 기록을 보고 청크를 건너뛰면 안 되기 때문. (이어서 하거나 discard로 지운다)
+// 청크 경계는 chunkSize의 배수로 맞춘다. 다시 돌릴 때 min id가 바뀌어도 경계가 같아야 하기 때문.
+@Slf4j
+@Component
+public class BulkUpdateEngine {
+
+    private final TransactionTemplate newTransaction;
+    private final EntityManager em;
+    // 모든 작업이 같이 쓰는 스레드 풀. 청크마다 커넥션을 하나씩 쓰기 때문에 커넥션 풀에서 reserved-connections만큼 빼고 잡는다.
+    private final int threads;
+    private final ExecutorService executor;
+
+    public BulkUpdateEngine(PlatformTransactionManager transactionManager, EntityManager em,
+                            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                            @Value("${repository.bulk.reserved-connections:2}") int reserved) {
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.em = em;
+        this.threads = Math.max(1, poolSize - reserved);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-update-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // minId, maxId는 대상 테이블 id 범위. (테이블이 비어 있으면 null)
+    // resume이면 같은 jobName으로 끝난 청크를 건너뛰고 이어서 한다. 아니면 새로 돌리는데, 남은 기록이 있으면 IllegalStateException.
+    // parallelism이 2 이상이면 청크를 여러 스레드에서 동시에 돌린다. 스레드 풀 크기보다 크게 줘도 풀 크기만큼만 돈다.
+    public BulkProgress run(String jobName, boolean resume, Long minId, Long maxId, int chunkSize, int parallelism,
+                            ChunkUpdate update, Consumer<BulkProgress> listener) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        if (!resume && hasCheckpoints(jobName)) {
+            throw new IllegalStateException("bulk update " + jobName + " has unfinished chunks from an earlier run; resume or discard it");
+        }
+        if (minId == null || maxId == null) {
+            return new BulkProgress(jobName, 0, 0, 0, 0);
+        }
+
+        Set<Long> completed = resume ? completedChunks(jobName, chunkSize) : Collections.emptySet();
+        List<Long> pending = new ArrayList<>();
+        int total = 0;
+        for (long start = Math.floorDiv(minId, chunkSize) * chunkSize; start <= maxId; start += chunkSize) {
+            total++;
+            if (!completed.contains(start)) {
+                pending.add(start);
+            }
+        }
+
+        Tracker tracker = new Tracker(jobName, total, total - pending.size(), listener);
+        if (parallelism <= 1 || pending.size() <= 1) {
+            for (Long start : pending) {
+                try {
+                    runChunk(jobName, start, chunkSize, update, tracker);
+                } catch (RuntimeException e) {
+                    throw new BulkUpdateException(tracker.snapshot(), e);
+                }
+            }
+        } else {
+            runParallel(jobName, pending, chunkSize, parallelism, update, tracker);
+        }
+
+        // 다 끝났으면 기록을 지운다. 같은 이름으로 다시 돌리면 처음부터 새로 한다.
+        discard(jobName);
+        BulkProgress result = tracker.snapshot();
+        log.info("bulk update {} finished: {}", jobName, result);
+        return result;
+    }
+
+    // 남은 기록을 지운다. 실패한 작업을 이어서 하지 않고 처음부터 새로 돌릴 때.
+    public void discard(String jobName) {
+        newTransaction.executeWithoutResult(status -> em.createQuery("delete from BulkChunkCheckpoint c where c.jobName = :jobName")
+                .setParameter("jobName", jobName)
+                .executeUpdate());
+    }
+
+    // 공유 풀에 청크를 다 넣지 않고 parallelism개의 작업자만 넣는다. 작업자는 남은 청크를 하나씩 꺼내서 돌린다.
+    // 그래야 한 작업이 풀을 다 차지하지 않는다.
+    private void runParallel(String jobName, List<Long> pending, int chunkSize, int parallelism,
+                             ChunkUpdate update, Tracker tracker) {
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Queue<Long> remaining = new ConcurrentLinkedQueue<>(pending);
+        int workers = Math.min(Math.min(parallelism, threads), pending.size());
+        List<Future<?>> futures = new ArrayList<>(workers);
+        try {
+            // 청크는 시작한 스레드의 레플리카 sticky 상태를 가지고 돈다.
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(ReplicaStickiness.propagate(() -> {
+                    Long start;
+                    // 하나라도 실패하면 아직 시작 안 한 청크는 돌리지 않는다.
+                    while (failure.get() == null && (start = remaining.poll()) != null) {
+                        try {
+                            runChunk(jobName, start, chunkSize, update, tracker);
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                })));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new IllegalStateException("interrupted", e));
+            futures.forEach(future -> future.cancel(true));
+        } catch (Exception e) {
+            failure.compareAndSet(null, new IllegalStateException(e));
+        }
+
+        if (failure.get() != null) {
+            throw new BulkUpdateException(tracker.snapshot(), failure.get());
+        }
+    }
+
+    private void runChunk(String jobName, long start, int chunkSize, ChunkUpdate update, Tracker tracker) {
+        long end = start + chunkSize;
+        Integer rows = newTransaction.execute(status -> {
+            int updated = update.update(start, end);
+            em.persist(new BulkChunkCheckpoint(jobName, start, end, updated, CoarseClock.now()));
+            return updated;
+        });
+        tracker.chunkCompleted(rows == null ? 0 : rows);
+    }
+
+    private boolean hasCheckpoints(String jobName) {
+        Long count = newTransaction.execute(status ->
+                em.createQuery("select count(c) from BulkChunkCheckpoint c where c.jobName = :jobName", Long.class)
+                        .setParameter("jobName", jobName)
+                        .getSingleResult());
+        return count != null && count > 0;
+    }
+
+    private Set<Long> completedChunks(String jobName, int chunkSize) {
+        List<BulkChunkCheckpoint> checkpoints = newTransaction.execute(status ->
+                em.createQuery("select c from BulkChunkCheckpoint c where c.jobName = :jobName", BulkChunkCheckpoint.class)
+                        .setParameter("jobName", jobName)
+                        .getResultList());
+
+        Set<Long> starts = new HashSet<>();
+        for (BulkChunkCheckpoint checkpoint : checkpoints) {
+            // 청크 크기를 바꿔서 이어 돌리면 이미 바꾼 row를 또 바꾸거나 빠뜨린다.
+            if (checkpoint.getEndId() - checkpoint.getStartId() != chunkSize) {
+                throw new IllegalStateException("bulk update " + jobName + " was started with chunk size "
+                        + (checkpoint.getEndId() - checkpoint.getStartId()) + ", not " + chunkSize);
+            }
+            starts.add(checkpoint.getStartId());
+        }
+        return starts;
+    }
+
+    private static final class Tracker {
+        private final String jobName;
+        private final int total;
+        private final int skipped;
+        private final AtomicInteger completed;
+        private final AtomicLong rows = new AtomicLong();
+        private final Consumer<BulkProgress> listener;
+
+        private Tracker(String jobName, int total, int skipped, Consumer<BulkProgress> listener) {
+            this.jobName = jobName;
+            this.total = total;
+            this.skipped = skipped;
+            this.completed = new AtomicInteger(skipped);
+            this.listener = listener;
+        }
+
+        private void chunkCompleted(int updated) {
+            rows.addAndGet(updated);
+            completed.incrementAndGet();
+            BulkProgress progress = snapshot();
+            log.debug("bulk update {}: {}/{} chunks", jobName, progress.getCompletedChunks(), total);
+            if (listener != null) {
+                listener.accept(progress);
+            }
+        }
+
+        private BulkProgress snapshot() {
+            return new BulkProgress(jobName, total, completed.get(), skipped, rows.get());
+        }
+    }
+}
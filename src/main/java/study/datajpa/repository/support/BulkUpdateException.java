@@ -0,0 +1,18 @@
+package study.datajpa.repository.support;
+
+// 청크 하나가 실패해서 벌크 업데이트가 멈췄을 때. 그 전까지 끝난 청크는 커밋되어 있다.
+// 같은 jobName에 resume으로 다시 돌리면 끝난 청크는 건너뛰고 이어서 한다.
+public class BulkUpdateException extends RuntimeException {
+
+    private final BulkProgress progress;
+
+    public BulkUpdateException(BulkProgress progress, Throwable cause) {
+        super("bulk update " + progress.getJobName() + " stopped at " + progress.getCompletedChunks()
+                + "/" + progress.getTotalChunks() + " chunks", cause);
+        this.progress = progress;
+    }
+
+    public BulkProgress getProgress() {
+        return progress;
+    }
+}
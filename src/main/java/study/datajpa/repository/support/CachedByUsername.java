@@ -0,0 +1,14 @@
+package study.datajpa.repository.support;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// username으로 회원을 찾는 조회 메서드에 붙인다. 결과를 (메서드, 파라미터) 기준으로 MemberQueryCache에 캐시한다.
+// 파라미터 중 String이나 String 컬렉션을 username으로 보고, 그 username의 회원이 등록 / 수정 / 삭제되면 캐시가 지워진다.
+// 반환 타입은 Member, Optional<Member>, List<Member> 만 된다.
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachedByUsername {
+}
@@ -0,0 +1,9 @@
+package study.datajpa.repository.support;
+
+// id가 [fromId, toId) 범위인 row만 바꾸는 벌크 업데이트. 바뀐 row 수를 반환한다.
+// BulkUpdateEngine이 청크마다 새 트랜잭션 안에서 부른다.
+@FunctionalInterface
+public interface ChunkUpdate {
+
+    int update(long fromId, long toId);
+}
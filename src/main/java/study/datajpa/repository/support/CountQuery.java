@@ -0,0 +1,45 @@
+package study.datajpa.repository.support;
+
+import lombok.Getter;
+
+import java.util.OptionalLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// 페이징 카운트 쿼리 하나.
+// table은 캐시를 지울 때와 통계 추정치를 가져올 때 쓰고, key는 같은 테이블 안에서 조건(predicate)을 구분한다. ex) "age:10"
+// aggregate는 쿼리 없이 메모리에 유지하는 카운터(MemberAggregates)에서 꺼내는 값. 못 꺼내면 empty.
+@Getter
+public class CountQuery {
+
+    // 조건 없는 전체 카운트의 key. APPROXIMATE(테이블 row 추정치)는 이 key일 때만 쓴다.
+    public static final String ALL = "all";
+
+    private final String table;
+    private final String key;
+    private final LongSupplier query;
+    private final Supplier<OptionalLong> aggregate;
+
+    private CountQuery(String table, String key, LongSupplier query, Supplier<OptionalLong> aggregate) {
+        this.table = table;
+        this.key = key;
+        this.query = query;
+        this.aggregate = aggregate;
+    }
+
+    public static CountQuery of(String table, String key, LongSupplier query) {
+        return new CountQuery(table, key, query, OptionalLong::empty);
+    }
+
+    public CountQuery withAggregate(Supplier<OptionalLong> aggregate) {
+        return new CountQuery(table, key, query, aggregate);
+    }
+
+    public boolean isUnfiltered() {
+        return ALL.equals(key);
+    }
+
+    public long count() {
+        return query.getAsLong();
+    }
+}
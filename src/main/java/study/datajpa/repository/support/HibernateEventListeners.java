@@ -0,0 +1,23 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+
+import javax.persistence.EntityManagerFactory;
+
+// 하이버네이트 이벤트 리스너(PostInsert, PostUpdate ...)를 스프링 빈으로 만들어서 등록할 때 쓴다.
+// JPA 엔티티 리스너(@PostUpdate)와 달리 update 전 값(old state)까지 받을 수 있다.
+public final class HibernateEventListeners {
+
+    private HibernateEventListeners() {
+    }
+
+    @SafeVarargs
+    public static <T> void append(EntityManagerFactory entityManagerFactory, EventType<T> type, T... listeners) {
+        entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class)
+                .appendListeners(type, listeners);
+    }
+}
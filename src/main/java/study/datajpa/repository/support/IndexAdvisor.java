@@ -0,0 +1,355 @@
+package study.datajpa.repository.support;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.mapping.PropertyReferenceException;
+import org.springframework.data.repository.core.RepositoryInformation;
+import org.springframework.data.repository.query.parser.Part;
+import org.springframework.data.repository.query.parser.PartTree;
+import org.springframework.data.repository.support.Repositories;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// 느린 쿼리는 대부분 인덱스가 없어서다. 애플리케이션이 뜰 때 리포지토리 쿼리 메서드를 훑어서 인덱스가 없는 조건을 찾아 로그로 남긴다.
+// 1. 메서드 이름 쿼리는 PartTree로, @Query(JPQL)는 where / order by 절을 정규식으로 읽어서 조건 컬럼과 정렬 컬럼을 뽑는다. 네이티브 쿼리는 안 본다.
+// 2. DB 메타데이터(getIndexInfo)에서 실제 인덱스를 읽는다. 조건 컬럼 중 하나로 시작하는 인덱스가 없으면 인덱스를 못 탄다고 본다.
+// 3. 못 타는 쿼리마다 @Table(indexes = ...)와 create index DDL을 제안한다. 같다(=, in) 조건 컬럼 -> 범위 조건 컬럼 순서.
+// 웹에서 넘어오는 sort 파라미터도 인덱스로 시작하는 컬럼(+ id)만 허용한다. (checkSort)
+@Slf4j
+@Component
+public class IndexAdvisor implements SmartInitializingSingleton {
+
+    private static final Pattern ROOT = Pattern.compile("(?:from|update(?:\\s+versioned)?)\\s+(\\w+)\\s+(?:as\\s+)?(\\w+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CLAUSE_END = Pattern.compile("\\s(?:group\\s+by|order\\s+by|having)\\s", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ORDER_BY = Pattern.compile("\\sorder\\s+by\\s(.+)$", Pattern.CASE_INSENSITIVE);
+
+    private final ListableBeanFactory beanFactory;
+    private final EntityManagerFactory entityManagerFactory;
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final boolean rejectUnindexedSort;
+
+    private volatile Map<Class<?>, Set<String>> sortable = Collections.emptyMap();
+    private volatile List<Suggestion> suggestions = Collections.emptyList();
+
+    public IndexAdvisor(ListableBeanFactory beanFactory,
+                        EntityManagerFactory entityManagerFactory,
+                        DataSource dataSource,
+                        @Value("${sql.index-advisor.enabled:true}") boolean enabled,
+                        @Value("${sql.index-advisor.reject-unindexed-sort:false}") boolean rejectUnindexedSort) {
+        this.beanFactory = beanFactory;
+        this.entityManagerFactory = entityManagerFactory;
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.rejectUnindexedSort = rejectUnindexedSort;
+    }
+
+    // 빈이 다 만들어진 다음에 돈다. 이때는 ddl-auto로 스키마도 이미 만들어져 있다.
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        Repositories repositories = new Repositories(beanFactory);
+
+        Map<String, List<List<String>>> indexesByTable = new HashMap<>();
+        Map<Class<?>, Set<String>> sortable = new HashMap<>();
+        Map<String, Suggestion> suggestions = new LinkedHashMap<>();
+
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (Class<?> domainType : repositories) {
+                EntityPersister persister = sessionFactory.getMetamodel().entityPersister(domainType);
+                if (!(persister instanceof AbstractEntityPersister)) {
+                    continue;
+                }
+                AbstractEntityPersister entity = (AbstractEntityPersister) persister;
+                String entityName = entityManagerFactory.getMetamodel().entity(domainType).getName(); // JPQL에서 쓰는 이름.
+                String table = entity.getTableName().toLowerCase(Locale.ROOT);
+                List<List<String>> indexes = indexesByTable.computeIfAbsent(table, name -> readIndexes(metaData, name));
+                sortable.put(domainType, sortableProperties(entity, indexes));
+
+                RepositoryInformation information = repositories.getRequiredRepositoryInformation(domainType);
+                for (Method method : information.getQueryMethods()) {
+                    AccessPath path = accessPath(method, domainType, entityName, entity);
+                    if (path == null || path.isIndexed(indexes)) {
+                        continue;
+                    }
+                    List<String> columns = path.suggestedColumns();
+                    Suggestion suggestion = suggestions.computeIfAbsent(table + columns, key -> new Suggestion(table, columns));
+                    suggestion.methods.add(information.getRepositoryInterface().getSimpleName() + "." + method.getName());
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("index advisor skipped: cannot read index metadata", e);
+            return;
+        }
+
+        this.sortable = sortable;
+        this.suggestions = new ArrayList<>(suggestions.values());
+        for (Suggestion suggestion : this.suggestions) {
+            log.warn("no index for {} ({})\n  suggested: {}\n             {}",
+                    suggestion.methods, suggestion.columns, suggestion.annotation(), suggestion.ddl());
+        }
+    }
+
+    // 인덱스를 못 타는 정렬이면 경고 로그만 남긴다. reject-unindexed-sort면 IllegalArgumentException. 분석 전이거나 꺼져 있으면 다 통과.
+    public void checkSort(Class<?> domainType, Sort sort) {
+        Set<String> allowed = sortable.get(domainType);
+        if (allowed == null) {
+            return;
+        }
+        for (Sort.Order order : sort) {
+            if (allowed.contains(order.getProperty())) {
+                continue;
+            }
+            if (rejectUnindexedSort) {
+                throw new IllegalArgumentException("sort property '" + order.getProperty()
+                        + "' has no supporting index. allowed: " + allowed);
+            }
+            log.warn("sort property '{}' on {} has no supporting index. allowed: {}",
+                    order.getProperty(), domainType.getSimpleName(), allowed);
+        }
+    }
+
+    public Set<String> getSortableProperties(Class<?> domainType) {
+        return sortable.getOrDefault(domainType, Collections.emptySet());
+    }
+
+    public List<Suggestion> getSuggestions() {
+        return suggestions;
+    }
+
+    private AccessPath accessPath(Method method, Class<?> domainType, String entityName, AbstractEntityPersister entity) {
+        Query query = method.getAnnotation(Query.class);
+        if (query != null) {
+            return query.nativeQuery() ? null : jpqlAccessPath(query.value(), entityName, entity);
+        }
+        try {
+            return derivedAccessPath(new PartTree(method.getName(), domainType), entity);
+        } catch (IllegalArgumentException | PropertyReferenceException e) {
+            return null; // 메서드 이름 쿼리가 아니다.
+        }
+    }
+
+    private AccessPath derivedAccessPath(PartTree tree, AbstractEntityPersister entity) {
+        AccessPath path = new AccessPath();
+        for (PartTree.OrPart or : tree) {
+            for (Part part : or) {
+                if (part.getProperty().hasNext()) {
+                    continue; // team.name 같은 조인 조건은 다른 테이블 인덱스라서 안 본다.
+                }
+                String column = column(entity, part.getProperty().getSegment());
+                if (column == null) {
+                    continue;
+                }
+                switch (part.getType()) {
+                    case SIMPLE_PROPERTY:
+                    case IN:
+                    case TRUE:
+                    case FALSE:
+                    case IS_NULL:
+                        path.equality.add(column);
+                        break;
+                    case BETWEEN:
+                    case LESS_THAN:
+                    case LESS_THAN_EQUAL:
+                    case GREATER_THAN:
+                    case GREATER_THAN_EQUAL:
+                    case BEFORE:
+                    case AFTER:
+                    case STARTING_WITH:
+                        path.range.add(column);
+                        break;
+                    default:
+                        break; // like '%..', not in 같은 건 인덱스가 있어도 못 탄다.
+                }
+            }
+        }
+        for (Sort.Order order : tree.getSort()) {
+            String column = column(entity, order.getProperty());
+            if (column != null) {
+                path.sort.add(column);
+            }
+        }
+        return path;
+    }
+
+    private AccessPath jpqlAccessPath(String jpql, String entityName, AbstractEntityPersister entity) {
+        Matcher root = ROOT.matcher(jpql);
+        if (!root.find() || !root.group(1).equals(entityName)) {
+            return null;
+        }
+        String alias = Pattern.quote(root.group(2));
+        AccessPath path = new AccessPath();
+
+        int where = indexOfWord(jpql, "where");
+        if (where >= 0) {
+            Matcher end = CLAUSE_END.matcher(jpql);
+            String predicate = jpql.substring(where, end.find(where) ? end.start() : jpql.length());
+            Matcher condition = Pattern.compile(alias + "\\.(\\w+)\\s*(=|<>|!=|>=|<=|>|<|in\\b|between\\b|like\\b)",
+                    Pattern.CASE_INSENSITIVE).matcher(predicate);
+            while (condition.find()) {
+                String operator = condition.group(2).toLowerCase(Locale.ROOT);
+                if (operator.equals("<>") || operator.equals("!=")) {
+                    continue;
+                }
+                String column = column(entity, condition.group(1));
+                if (column == null) {
+                    continue;
+                }
+                (operator.equals("=") || operator.equals("in") ? path.equality : path.range).add(column);
+            }
+        }
+
+        Matcher orderBy = ORDER_BY.matcher(jpql);
+        if (orderBy.find()) {
+            Matcher sortProperty = Pattern.compile(alias + "\\.(\\w+)").matcher(orderBy.group(1));
+            while (sortProperty.find()) {
+                String column = column(entity, sortProperty.group(1));
+                if (column != null) {
+                    path.sort.add(column);
+                }
+            }
+        }
+        return path;
+    }
+
+    // 인덱스 맨 앞 컬럼으로 정렬할 수 있는 프로퍼티. id는 pk 인덱스가 있다.
+    private static Set<String> sortableProperties(AbstractEntityPersister entity, List<List<String>> indexes) {
+        Set<String> leading = indexes.stream()
+                .map(columns -> columns.get(0))
+                .collect(Collectors.toSet());
+        Set<String> properties = new LinkedHashSet<>();
+        properties.add(entity.getIdentifierPropertyName());
+        for (String property : entity.getPropertyNames()) {
+            String column = column(entity, property);
+            if (column != null && leading.contains(column)) {
+                properties.add(property);
+            }
+        }
+        return Collections.unmodifiableSet(properties);
+    }
+
+    private static String column(AbstractEntityPersister entity, String property) {
+        try {
+            String[] columns = property.equals(entity.getIdentifierPropertyName())
+                    ? entity.getIdentifierColumnNames()
+                    : entity.getPropertyColumnNames(property);
+            return columns.length == 1 ? columns[0].toLowerCase(Locale.ROOT) : null;
+        } catch (RuntimeException e) {
+            return null; // 컬렉션 같은 컬럼이 없는 프로퍼티.
+        }
+    }
+
+    // 인덱스 이름별 컬럼 목록. pk, unique, fk 인덱스도 다 들어온다.
+    private static List<List<String>> readIndexes(DatabaseMetaData metaData, String table) {
+        Map<String, List<String>> indexes = new LinkedHashMap<>();
+        try {
+            String name = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+            try (ResultSet rs = metaData.getIndexInfo(null, null, name, false, true)) {
+                while (rs.next()) {
+                    String index = rs.getString("INDEX_NAME");
+                    String column = rs.getString("COLUMN_NAME");
+                    if (index == null || column == null) {
+                        continue; // 통계 행.
+                    }
+                    indexes.computeIfAbsent(index, key -> new ArrayList<>()).add(column.toLowerCase(Locale.ROOT));
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("cannot read indexes of {}", table, e);
+        }
+        return new ArrayList<>(indexes.values());
+    }
+
+    private static int indexOfWord(String jpql, String word) {
+        Matcher matcher = Pattern.compile("\\s" + word + "\\s", Pattern.CASE_INSENSITIVE).matcher(jpql);
+        return matcher.find() ? matcher.end() : -1;
+    }
+
+    // 쿼리 하나가 쓰는 컬럼. 같다 조건, 범위 조건, 정렬 순서.
+    private static class AccessPath {
+
+        private final Set<String> equality = new LinkedHashSet<>();
+        private final Set<String> range = new LinkedHashSet<>();
+        private final Set<String> sort = new LinkedHashSet<>();
+
+        // 조건이 있으면 조건 컬럼 중 하나로 시작하는 인덱스, 조건 없이 정렬만 있으면 정렬 첫 컬럼으로 시작하는 인덱스가 있어야 한다.
+        boolean isIndexed(List<List<String>> indexes) {
+            Set<String> leading = new LinkedHashSet<>(equality);
+            leading.addAll(range);
+            if (leading.isEmpty() && !sort.isEmpty()) {
+                leading.add(sort.iterator().next());
+            }
+            if (leading.isEmpty()) {
+                return true; // 전체 조회는 인덱스랑 상관없다.
+            }
+            return indexes.stream().anyMatch(columns -> leading.contains(columns.get(0)));
+        }
+
+        // 같다 조건 -> 범위 조건 하나 -> (범위 조건이 없으면) 정렬. 범위 조건 뒤의 컬럼은 인덱스로 못 쓴다.
+        List<String> suggestedColumns() {
+            List<String> columns = new ArrayList<>(equality);
+            if (!range.isEmpty()) {
+                columns.add(range.iterator().next());
+            } else {
+                sort.stream().filter(column -> !columns.contains(column)).forEach(columns::add);
+            }
+            return columns;
+        }
+    }
+
+    @Getter
+    public static class Suggestion {
+
+        private final String table;
+        private final List<String> columns;
+        private final Set<String> methods = new LinkedHashSet<>();
+
+        Suggestion(String table, List<String> columns) {
+            this.table = table;
+            this.columns = columns;
+        }
+
+        public String annotation() {
+            return "@Table(indexes = @Index(name = \"" + indexName() + "\", columnList = \"" + String.join(", ", columns) + "\"))";
+        }
+
+        public String ddl() {
+            return "create index " + indexName() + " on " + table + " (" + String.join(", ", columns) + ");";
+        }
+
+        private String indexName() {
+            return "idx_" + table + "_" + String.join("_", columns);
+        }
+    }
+}
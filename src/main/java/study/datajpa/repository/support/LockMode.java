@@ -0,0 +1,11 @@
+package study.datajpa.repository.support;
+
+// 회원을 수정할 때 다른 트랜잭션과의 충돌을 어떻게 막을지.
+public enum LockMode {
+
+    // select ... for update. 커밋할 때까지 row 락을 잡는다. 같은 row를 바꾸려는 트랜잭션은 전부 줄을 서서 기다린다.
+    PESSIMISTIC,
+
+    // 락 없이 읽고 update 할 때 version 컬럼으로 충돌을 확인한다. 충돌하면 처음부터 다시 읽어서 다시 바꾼다. (OptimisticLockRetryTemplate)
+    OPTIMISTIC
+}
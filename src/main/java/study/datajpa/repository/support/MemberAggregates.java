@@ -0,0 +1,524 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// 전체 회원 수 / 나이별 회원 수 / 팀별 회원 수 / 전체 팀 수를 메모리에 들고 있는다. 카운트 쿼리(count(*))를 안 날리고 바로 꺼낸다.
+// 카운터는 LongAdder라서 여러 스레드가 동시에 올리고 내려도 한 곳에서 경합하지 않는다.
+// 1. 뜰 때 group by 쿼리로 한 번 센다.
+// 2. 그 다음부터는 하이버네이트 커밋 후 이벤트(post-commit insert / update / delete)로 바뀐 만큼만 더하고 뺀다. 롤백된 변경은 안 들어온다.
+// 3. 벌크 연산(bulkAgePlus 등)은 엔티티 이벤트가 안 나가서 커밋 후에 다시 센다. 여러 번 들어와도 한 번으로 합친다.
+//    SQL이 나간 순간부터 그 다음에 시작한 다시 세기가 끝날 때까지는 카운터를 안 쓴다(dirty). 그동안은 호출하는 쪽이 카운트 쿼리를 날린다.
+// 4. 그래도 어긋날 수 있어서(이벤트가 안 나가는 네이티브 쿼리, 다른 애플리케이션의 쓰기 등) reconcile-interval마다 다시 센다. 어긋난 만큼은 drift로 남긴다.
+// 다시 세는 동안 커밋은 막지 않는다. 대신 세기 전에 dirty로 바꾸고, 세는 동안 회원 / 팀을 쓴 커밋이 없었을 때만 센 결과로 바꿔 끼운다.
+// 커밋과 커밋 후 이벤트 사이에 세면 그 커밋이 센 결과에도 들어가고 이벤트로도 한 번 더 더해지기 때문. (writeGeneration)
+// 커밋이 겹치면 몇 번 다시 세 보고, 그래도 안 되면 dirty인 채로 두고(카운트 쿼리로 간다) 조금 뒤에 다시 센다.
+// 쓰기 트랜잭션 안에서는 아직 커밋 안 된 변경이 안 세어져 있어서 empty를 돌려준다. 그때는 호출하는 쪽이 카운트 쿼리를 날린다.
+@Slf4j
+@Component
+public class MemberAggregates implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener,
+        SqlStatementListener, SmartInitializingSingleton {
+
+    private static final int RECONCILE_ATTEMPTS = 3;
+    private static final long RECONCILE_PAUSE_MILLIS = 50;
+    private static final Duration RECONCILE_RETRY_DELAY = Duration.ofSeconds(1);
+
+    private final SessionFactory sessionFactory;
+    private final DataSource dataSource;
+    private final PersistenceUnitUtil persistenceUnitUtil;
+    private final boolean enabled;
+    private final Duration reconcileInterval;
+
+    private volatile Counts counts = new Counts();
+    private volatile boolean loaded;
+    private volatile long lastDrift;
+    private volatile Instant lastReconciledAt;
+
+    // 다시 세야 하는 쓰기가 생길 때마다 올린다. 다시 세기는 시작할 때 본 값을 끝날 때 cleanGeneration에 적는다. 둘이 같아야 카운터를 쓴다.
+    private final AtomicLong dirtyGeneration = new AtomicLong();
+    private volatile long cleanGeneration;
+
+    // 회원 / 팀을 쓴 커밋이 시작할 때와 커밋 후 이벤트까지 다 처리했을 때 올린다. commitsInFlight는 그 사이에 있는 커밋 수.
+    private final AtomicLong writeGeneration = new AtomicLong();
+    private final AtomicLong commitsInFlight = new AtomicLong();
+    private final Set<EventSource> trackedSessions = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean reconcileRequested = new AtomicBoolean();
+    private final ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-aggregates");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MemberAggregates(EntityManagerFactory entityManagerFactory,
+                            DataSource dataSource,
+                            SqlStatementInspector sqlStatementInspector,
+                            MeterRegistry meterRegistry,
+                            @Value("${member.aggregates.enabled:true}") boolean enabled,
+                            @Value("${member.aggregates.reconcile-interval:10m}") Duration reconcileInterval) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.dataSource = dataSource;
+        this.persistenceUnitUtil = entityManagerFactory.getPersistenceUnitUtil();
+        this.enabled = enabled;
+        this.reconcileInterval = reconcileInterval;
+        if (!enabled) {
+            return;
+        }
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_COMMIT_INSERT, this);
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_COMMIT_UPDATE, this);
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_COMMIT_DELETE, this);
+        CommitTracker commitTracker = new CommitTracker();
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_INSERT, commitTracker);
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_UPDATE, commitTracker);
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_DELETE, commitTracker);
+        sqlStatementInspector.addListener(this);
+
+        Gauge.builder("member.aggregates.members", this, aggregates -> aggregates.counts.members.sum()).register(meterRegistry);
+        Gauge.builder("member.aggregates.teams", this, aggregates -> aggregates.counts.teams.sum()).register(meterRegistry);
+        // 마지막으로 다시 셌을 때 이벤트로 유지한 값과 실제 값의 차이(절댓값 합). 0이 아니면 이벤트를 놓친 쓰기가 있었다.
+        Gauge.builder("member.aggregates.drift", this, aggregates -> aggregates.lastDrift).register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        reconcile();
+        long interval = reconcileInterval.toMillis();
+        if (interval > 0) {
+            reconciler.scheduleWithFixedDelay(this::reconcileQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reconciler.shutdownNow();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public OptionalLong memberCount() {
+        return usable() ? OptionalLong.of(counts.members.sum()) : OptionalLong.empty();
+    }
+
+    public OptionalLong memberCountByAge(int age) {
+        return usable() ? OptionalLong.of(sum(counts.byAge.get(age))) : OptionalLong.empty();
+    }
+
+    public OptionalLong memberCountByTeam(long teamId) {
+        return usable() ? OptionalLong.of(sum(counts.byTeam.get(teamId))) : OptionalLong.empty();
+    }
+
+    public OptionalLong teamCount() {
+        return usable() ? OptionalLong.of(counts.teams.sum()) : OptionalLong.empty();
+    }
+
+    // 대시보드용. 0인 나이 / 팀은 뺀다.
+    public Snapshot snapshot() {
+        Counts current = counts;
+        return new Snapshot(current.members.sum(), current.teams.sum(), current.withoutTeam.sum(),
+                nonZero(current.byAge), nonZero(current.byTeam), lastReconciledAt, lastDrift);
+    }
+
+    // 지금 바로 DB와 맞춘다. 어긋난 양(절댓값 합)을 돌려준다. 세는 동안 계속 커밋이 겹쳐서 못 바꿔 끼웠으면 empty. (조금 뒤에 다시 센다)
+    public OptionalLong reconcile() {
+        long start = System.nanoTime();
+        // 여기까지의 dirty는 이번에 세는 결과에 다 들어간다. 다 셀 때까지는 카운터를 안 쓴다.
+        long generation = dirtyGeneration.incrementAndGet();
+        for (int attempt = 0; attempt < RECONCILE_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                pause();
+            }
+            long written = writeGeneration.get();
+            if (commitsInFlight.get() != 0) {
+                continue;
+            }
+            Counts fresh = count();
+            if (commitsInFlight.get() != 0 || writeGeneration.get() != written) {
+                continue;
+            }
+            long drift = loaded ? counts.distance(fresh) : 0;
+            counts = fresh;
+            // 바꿔 끼우는 사이에 시작한 커밋의 이벤트는 바꾸기 전 카운터에 더해졌을 수 있다. 그러면 다시 센다.
+            if (writeGeneration.get() != written) {
+                continue;
+            }
+            loaded = true;
+            lastDrift = drift;
+            lastReconciledAt = Instant.now();
+            // 세는 동안 벌크 연산이 있었으면 dirty가 또 올라가 있어서 여기서 맞춰도 안 풀린다.
+            cleanGeneration = generation;
+            if (drift != 0) {
+                log.warn("member aggregates drifted by {} (events missed), reconciled in {} ms",
+                        drift, (System.nanoTime() - start) / 1_000_000);
+            } else {
+                log.info("member aggregates reconciled: {} members, {} teams in {} ms",
+                        fresh.members.sum(), fresh.teams.sum(), (System.nanoTime() - start) / 1_000_000);
+            }
+            return OptionalLong.of(drift);
+        }
+        log.info("member aggregates reconcile overlapped with commits {} times, retrying later", RECONCILE_ATTEMPTS);
+        reconciler.schedule(this::requestReconcile, RECONCILE_RETRY_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+        return OptionalLong.empty();
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Member) {
+            Member member = (Member) entity;
+            apply(Delta.member(1, member.getAge(), teamId(member.getTeam())));
+        } else if (entity instanceof Team) {
+            apply(Delta.team(1));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        Object[] oldState = event.getOldState();
+        if (oldState == null) {
+            // 바뀌기 전 값을 모르면(분리된 엔티티를 update 한 경우 등) 얼마나 옮겨야 할지 몰라서 다시 센다.
+            recountAfterCompletion();
+            return;
+        }
+        EntityPersister persister = event.getPersister();
+        Member member = (Member) event.getEntity();
+        int oldAge = (Integer) oldState[propertyIndex(persister, "age")];
+        Long oldTeamId = teamId(oldState[propertyIndex(persister, "team")]);
+        int newAge = member.getAge();
+        Long newTeamId = teamId(member.getTeam());
+        if (oldAge != newAge || !Objects.equals(oldTeamId, newTeamId)) {
+            apply(Delta.member(-1, oldAge, oldTeamId).then(Delta.member(1, newAge, newTeamId)));
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Team) {
+            apply(Delta.team(-1));
+            return;
+        }
+        if (!(entity instanceof Member)) {
+            return;
+        }
+        Object[] deletedState = event.getDeletedState();
+        if (deletedState == null) {
+            recountAfterCompletion();
+            return;
+        }
+        EntityPersister persister = event.getPersister();
+        apply(Delta.member(-1,
+                (Integer) deletedState[propertyIndex(persister, "age")],
+                teamId(deletedState[propertyIndex(persister, "team")])));
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        Class<?> type = persister.getMappedClass();
+        return Member.class.equals(type) || Team.class.equals(type);
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        String table = SqlStatements.writtenTable(sql);
+        if (("member".equals(table) && SqlStatements.isBulkWrite(sql, "member_id"))
+                || ("team".equals(table) && SqlStatements.isBulkWrite(sql, "team_id"))) {
+            recountAfterCompletion();
+        }
+    }
+
+    private boolean usable() {
+        return loaded && dirtyGeneration.get() == cleanGeneration && !TransactionCallbacks.inReadWriteTransaction();
+    }
+
+    // 지금 바로 dirty로 바꾸고, 트랜잭션이 끝나면 한 번 더 바꾸고 다시 센다.
+    // 끝날 때 또 바꾸는 건 그 사이(SQL이 나가고 커밋하기 전)에 시작한 다시 세기가 커밋 전 DB를 세고 dirty를 풀었을 수 있어서.
+    // 롤백돼도 다시 센다. 지금 바꾼 dirty를 풀어야 한다.
+    private void recountAfterCompletion() {
+        dirtyGeneration.incrementAndGet();
+        TransactionCallbacks.afterCompletion(() -> {
+            dirtyGeneration.incrementAndGet();
+            requestReconcile();
+        });
+    }
+
+    private void requestReconcile() {
+        if (reconcileRequested.compareAndSet(false, true)) {
+            reconciler.execute(() -> {
+                reconcileRequested.set(false);
+                reconcileQuietly();
+            });
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.warn("member aggregates reconcile failed", e);
+        }
+    }
+
+    // 다시 세는 중에 바꿔 끼우면 바꾸기 전 카운터에 더해질 수 있다. 그런 경우는 reconcile이 writeGeneration을 보고 다시 센다.
+    private void apply(Delta delta) {
+        delta.applyTo(counts);
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(RECONCILE_PAUSE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Counts count() {
+        try (Connection connection = dataSource.getConnection()) {
+            return count(connection);
+        } catch (SQLException e) {
+            throw new IllegalStateException("member aggregates reconcile failed", e);
+        }
+    }
+
+    private Counts count(Connection connection) {
+        Counts fresh = new Counts();
+        StatelessSession session = sessionFactory.openStatelessSession(connection);
+        try {
+            List<?> ages = session.createQuery("select m.age, count(m) from Member m group by m.age").list();
+            for (Object row : ages) {
+                Object[] columns = (Object[]) row;
+                long count = (Long) columns[1];
+                fresh.byAge.put((Integer) columns[0], adder(count));
+                fresh.members.add(count);
+            }
+            List<?> teams = session.createQuery("select t.id, count(m) from Member m left join m.team t group by t.id").list();
+            for (Object row : teams) {
+                Object[] columns = (Object[]) row;
+                long count = (Long) columns[1];
+                if (columns[0] == null) {
+                    fresh.withoutTeam.add(count);
+                } else {
+                    fresh.byTeam.put((Long) columns[0], adder(count));
+                }
+            }
+            fresh.teams.add((Long) session.createQuery("select count(t) from Team t").uniqueResult());
+        } finally {
+            session.close();
+        }
+        return fresh;
+    }
+
+    // 프록시를 초기화하지 않고 id만 꺼낸다. 팀이 없으면 null.
+    private Long teamId(Object team) {
+        return team == null ? null : (Long) persistenceUnitUtil.getIdentifier(team);
+    }
+
+    private static int propertyIndex(EntityPersister persister, String property) {
+        return persister.getEntityMetamodel().getPropertyIndex(property);
+    }
+
+    private static LongAdder adder(long value) {
+        LongAdder adder = new LongAdder();
+        adder.add(value);
+        return adder;
+    }
+
+    private static long sum(LongAdder adder) {
+        return adder == null ? 0 : adder.sum();
+    }
+
+    private static <K extends Comparable<K>> SortedMap<K, Long> nonZero(Map<K, LongAdder> counters) {
+        SortedMap<K, Long> result = new TreeMap<>();
+        counters.forEach((key, adder) -> {
+            long value = adder.sum();
+            if (value != 0) {
+                result.put(key, value);
+            }
+        });
+        return result;
+    }
+
+    // 회원 / 팀을 쓴 세션의 커밋을 센다. 커밋 후 이벤트와 같은 이벤트 타입이라 MemberAggregates와 따로 등록한다.
+    // 하이버네이트는 flush -> before 처리 -> 커밋 -> after 처리(커밋 후 이벤트 포함) 순서로 돈다.
+    // before 처리에서 commitsInFlight를 올리고, 그때 등록한 after 처리에서 내린다. 커밋 후 이벤트보다 늦게 등록돼서 이벤트를 다 처리한 다음에 내려간다.
+    private class CommitTracker implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            track(event.getEntity(), event.getSession());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            track(event.getEntity(), event.getSession());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            track(event.getEntity(), event.getSession());
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return false;
+        }
+
+        // 이벤트마다 등록하지만 세션 하나에 한 번만 센다. 롤백되면 before 처리가 안 돌아서 세지도 않는다.
+        private void track(Object entity, EventSource session) {
+            if (!(entity instanceof Member) && !(entity instanceof Team)) {
+                return;
+            }
+            session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) beforeSession -> {
+                if (!trackedSessions.add(session)) {
+                    return;
+                }
+                commitsInFlight.incrementAndGet();
+                writeGeneration.incrementAndGet();
+                session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, afterSession) -> {
+                    trackedSessions.remove(session);
+                    writeGeneration.incrementAndGet();
+                    commitsInFlight.decrementAndGet();
+                });
+            });
+        }
+    }
+
+    private static final class Counts {
+        private final LongAdder members = new LongAdder();
+        private final LongAdder teams = new LongAdder();
+        private final LongAdder withoutTeam = new LongAdder();
+        private final ConcurrentMap<Integer, LongAdder> byAge = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Long, LongAdder> byTeam = new ConcurrentHashMap<>();
+
+        private void addMember(int sign, int age, Long teamId) {
+            members.add(sign);
+            byAge.computeIfAbsent(age, key -> new LongAdder()).add(sign);
+            if (teamId == null) {
+                withoutTeam.add(sign);
+            } else {
+                byTeam.computeIfAbsent(teamId, key -> new LongAdder()).add(sign);
+            }
+        }
+
+        private long distance(Counts other) {
+            long drift = Math.abs(members.sum() - other.members.sum())
+                    + Math.abs(teams.sum() - other.teams.sum())
+                    + Math.abs(withoutTeam.sum() - other.withoutTeam.sum());
+            return drift + distance(byAge, other.byAge) + distance(byTeam, other.byTeam);
+        }
+
+        private static <K> long distance(Map<K, LongAdder> a, Map<K, LongAdder> b) {
+            long drift = 0;
+            for (Map.Entry<K, LongAdder> entry : a.entrySet()) {
+                drift += Math.abs(entry.getValue().sum() - sum(b.get(entry.getKey())));
+            }
+            for (Map.Entry<K, LongAdder> entry : b.entrySet()) {
+                if (!a.containsKey(entry.getKey())) {
+                    drift += Math.abs(entry.getValue().sum());
+                }
+            }
+            return drift;
+        }
+    }
+
+    // 커밋 하나가 카운터에 주는 변화.
+    private interface Delta {
+
+        void applyTo(Counts counts);
+
+        static Delta member(int sign, int age, Long teamId) {
+            return counts -> counts.addMember(sign, age, teamId);
+        }
+
+        static Delta team(int sign) {
+            return counts -> counts.teams.add(sign);
+        }
+
+        default Delta then(Delta next) {
+            return counts -> {
+                applyTo(counts);
+                next.applyTo(counts);
+            };
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Snapshot {
+        private final long members;
+        private final long teams;
+        private final long withoutTeam;
+        private final SortedMap<Integer, Long> byAge;
+        private final SortedMap<Long, Long> byTeam;
+        private final Instant reconciledAt;
+        private final long drift;
+    }
+}
@@ -0,0 +1,231 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.dto.MemberDto;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberRepository;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// id로 회원 찾기를 모아서 한 번에 한다. (DataLoader 방식)
+// 1. 같은 id를 동시에 찾는 요청은 쿼리 하나를 같이 기다린다.
+// 2. 다른 id라도 window 안에 들어온 것끼리 모아서 in 쿼리 한 번으로 가져온다. max-batch-size가 차면 바로 보낸다.
+// load는 엔티티(findAllById), loadDto는 DTO(findDtosByIds)를 가져온다. 둘은 따로 모은다.
+// load가 돌려주는 회원은 준영속이고 같은 id를 기다린 요청끼리 같은 인스턴스를 나눠 가진다. 읽기 전용으로만 쓰고, 지연 로딩(팀 등)은 안 된다.
+// 화면에 내보낼 거면 loadDto를 쓴다.
+@Component
+public class MemberBatchLoader {
+
+    private final Executor repositoryExecutor;
+    private final TransactionTemplate readOnlyTransaction;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Batcher<Member> members;
+    private final Batcher<MemberDto> dtos;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    public MemberBatchLoader(MemberRepository memberRepository,
+                             @Qualifier("repositoryExecutor") Executor repositoryExecutor,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry,
+                             @Value("${member.loader.window:2ms}") Duration window,
+                             @Value("${member.loader.max-batch-size:100}") int maxBatchSize) {
+        this.repositoryExecutor = repositoryExecutor;
+        // 항상 새 트랜잭션. 호출한 스레드에서 실행되더라도(큐가 꽉 찬 경우) 그 스레드의 영속성 컨텍스트에 있는 엔티티를 다른 요청에 나눠 주지 않는다.
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.members = new Batcher<>(memberRepository::findById, memberRepository::findAllById, Member::getId);
+        this.dtos = new Batcher<>(memberRepository::findDtoById, memberRepository::findDtosByIds, MemberDto::getId);
+
+        FunctionCounter.builder("member.loader.requests", requests, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("member.loader.coalesced", coalesced, LongAdder::sum)
+                .description("requests that joined an in-flight lookup of the same id").register(meterRegistry);
+        FunctionCounter.builder("member.loader.batches", batches, LongAdder::sum)
+                .description("in queries").register(meterRegistry);
+    }
+
+    public Optional<Member> load(Long id) {
+        return AsyncQueries.join(loadAsync(id));
+    }
+
+    public CompletableFuture<Optional<Member>> loadAsync(Long id) {
+        return members.loadAsync(id);
+    }
+
+    public Optional<MemberDto> loadDto(Long id) {
+        return AsyncQueries.join(loadDtoAsync(id));
+    }
+
+    public CompletableFuture<Optional<MemberDto>> loadDtoAsync(Long id) {
+        return dtos.loadAsync(id);
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    // 찾을 종류(엔티티 / DTO)마다 하나. 기다리는 id, 모으는 중인 배치는 종류별로 따로 가진다.
+    private class Batcher<V> {
+
+        private final Function<Long, Optional<V>> findOne;
+        private final Function<Collection<Long>, List<V>> findAll;
+        private final Function<V, Long> idOf;
+
+        private final Map<Long, CompletableFuture<Optional<V>>> inFlight = new ConcurrentHashMap<>();
+        private final Object lock = new Object();
+        private List<Long> pending = new ArrayList<>();
+        private ScheduledFuture<?> scheduledFlush;
+
+        private Batcher(Function<Long, Optional<V>> findOne, Function<Collection<Long>, List<V>> findAll, Function<V, Long> idOf) {
+            this.findOne = findOne;
+            this.findAll = findAll;
+            this.idOf = idOf;
+        }
+
+        private CompletableFuture<Optional<V>> loadAsync(Long id) {
+            // 쓰기 트랜잭션 안이면 다른 스레드에서 찾은 결과에는 아직 커밋 안 된 변경이 안 보인다. 그냥 바로 찾는다.
+            // 모으지도 않는다. 이 스레드가 배치를 채워서 보내면 RepositoryExecutor가 이 트랜잭션 안에서 바로 실행해 버리기 때문.
+            if (TransactionCallbacks.inReadWriteTransaction()) {
+                return CompletableFuture.completedFuture(findOne.apply(id));
+            }
+            // 방금 쓴 요청(ReplicaStickiness)이면 프라이머리에서 읽어야 한다. 배치는 타이머 스레드가 보내서 그 상태가 안 넘어가니 따로 찾는다.
+            // repositoryExecutor가 sticky 상태를 넘겨 준다.
+            if (ReplicaStickiness.isSticky()) {
+                return CompletableFuture.supplyAsync(
+                        () -> readOnlyTransaction.execute(status -> findOne.apply(id)), repositoryExecutor);
+            }
+            requests.increment();
+            CompletableFuture<Optional<V>> created = new CompletableFuture<>();
+            CompletableFuture<Optional<V>> existing = inFlight.putIfAbsent(id, created);
+            if (existing != null) {
+                coalesced.increment();
+                return existing;
+            }
+            enqueue(id);
+            return created;
+        }
+
+        private void enqueue(Long id) {
+            List<Long> ready = null;
+            synchronized (lock) {
+                pending.add(id);
+                if (pending.size() >= maxBatchSize) {
+                    ready = takePending();
+                } else if (scheduledFlush == null) {
+                    // 배치의 첫 id가 들어온 시점부터 window를 잰다.
+                    scheduledFlush = timer.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            if (ready != null) {
+                dispatch(ready);
+            }
+        }
+
+        private void flush() {
+            List<Long> ready;
+            synchronized (lock) {
+                ready = takePending();
+            }
+            if (!ready.isEmpty()) {
+                dispatch(ready);
+            }
+        }
+
+        // lock 안에서 부른다.
+        private List<Long> takePending() {
+            List<Long> ready = pending;
+            pending = new ArrayList<>();
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            return ready;
+        }
+
+        // 쿼리는 타이머 스레드가 아니라 repositoryExecutor에서 돌린다. 동시에 쓰는 커넥션 수가 거기서 제한된다.
+        private void dispatch(List<Long> ids) {
+            batches.increment();
+            try {
+                repositoryExecutor.execute(() -> fetch(ids));
+            } catch (RuntimeException e) {
+                fail(ids, e);
+            }
+        }
+
+        private void fetch(List<Long> ids) {
+            try {
+                List<V> values = readOnlyTransaction.execute(status -> findAll.apply(ids));
+                Map<Long, V> byId = new HashMap<>();
+                for (V value : values) {
+                    byId.put(idOf.apply(value), value);
+                }
+                for (Long id : ids) {
+                    complete(id, Optional.ofNullable(byId.get(id)));
+                }
+            } catch (RuntimeException e) {
+                fail(ids, e);
+            }
+        }
+
+        // 끝난 id는 바로 빼 둔다. 그 다음에 같은 id를 찾으면 새로 조회한다. (캐시가 아니다)
+        private void complete(Long id, Optional<V> value) {
+            CompletableFuture<Optional<V>> future = inFlight.remove(id);
+            if (future != null) {
+                future.complete(value);
+            }
+        }
+
+        private void fail(List<Long> ids, RuntimeException e) {
+            for (Long id : ids) {
+                CompletableFuture<Optional<V>> future = inFlight.remove(id);
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// username -> (id, age, teamId) 읽기 모델. 엔티티를 조회하지 않고 메모리(힙 밖)에서 바로 찾는다. (OffHeapMemberIndex)
+// 1. 뜰 때 스테이트리스 세션 스크롤로 회원을 한 줄씩 읽어서 채운다. 영속성 컨텍스트에 쌓이지 않는다.
+// 2. 그 다음부터는 하이버네이트 커밋 후 이벤트(post-commit insert / update / delete)로 바뀐 회원만 고친다. 롤백된 변경은 안 들어온다.
+// 3. 벌크 연산(bulkAgePlus 등)은 엔티티 이벤트가 안 나가서 커밋 후에 전체를 다시 읽는다. 여러 번 들어와도 한 번으로 합친다.
+//    SQL이 나간 순간부터 그 다음에 시작한 다시 읽기가 끝날 때까지는 못 찾은 걸로 한다(dirty). 그동안은 호출하는 쪽이 DB에서 찾는다.
+// 다시 읽는 동안 들어온 이벤트는 기존 인덱스에 바로 반영하고 따로 모아 뒀다가, 새 인덱스에 순서대로 한 번 더 적용하고 바꿔 끼운다.
+@Slf4j
+@Component
+public class MemberDirectory implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener,
+        SqlStatementListener, SmartInitializingSingleton {
+
+    private static final int LOAD_FETCH_SIZE = 1000;
+
+    private final SessionFactory sessionFactory;
+    private final boolean enabled;
+    private final int expectedSize;
+
+    private volatile OffHeapMemberIndex index;
+    private volatile boolean loaded;
+    private List<Consumer<OffHeapMemberIndex>> pending; // 다시 읽는 동안만. this로 잠근다.
+
+    // 벌크 연산이 나갈 때마다 올린다. 다시 읽기는 시작할 때 본 값을 끝날 때 cleanGeneration에 적는다. 둘이 같아야 인덱스를 쓴다.
+    private final AtomicLong dirtyGeneration = new AtomicLong();
+    private volatile long cleanGeneration;
+
+    private final Object reloadLock = new Object();
+    private final AtomicBoolean reloadRequested = new AtomicBoolean();
+    private final ExecutorService reloader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-directory");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MemberDirectory(EntityManagerFactory entityManagerFactory,
+                           SqlStatementInspector sqlStatementInspector,
+                           MeterRegistry meterRegistry,
+                           @Value("${member.directory.enabled:true}") boolean enabled,
+                           @Value("${member.directory.expected-size:100000}") int expectedSize) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.enabled = enabled;
+        this.expectedSize = expectedSize;
+        this.index = new OffHeapMemberIndex(expectedSize);
+        if (!enabled) {
+            return;
+        }
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_COMMIT_INSERT, this);
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_COMMIT_UPDATE, this);
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_COMMIT_DELETE, this);
+        sqlStatementInspector.addListener(this);
+
+        Gauge.builder("member.directory.size", this, directory -> directory.index.size()).register(meterRegistry);
+        Gauge.builder("member.directory.off-heap", this, directory -> directory.index.offHeapBytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled) {
+            reload();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdownNow();
+    }
+
+    // 다 읽기 전이나 벌크 연산 뒤 다시 읽기 전에는 false. 그때는 DB에서 찾아야 한다.
+    public boolean isLoaded() {
+        return loaded && dirtyGeneration.get() == cleanGeneration;
+    }
+
+    // 조회마다 할당하지 않으려면 Entry를 재사용한다. 인덱스를 못 쓰는 동안은 못 찾은 걸로 한다.
+    public boolean find(String username, OffHeapMemberIndex.Entry into) {
+        return isLoaded() && index.find(username, into);
+    }
+
+    public Optional<OffHeapMemberIndex.Entry> find(String username) {
+        OffHeapMemberIndex.Entry entry = new OffHeapMemberIndex.Entry();
+        return find(username, entry) ? Optional.of(entry) : Optional.empty();
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            Member member = (Member) event.getEntity();
+            long id = member.getId();
+            String username = member.getUsername();
+            int age = member.getAge();
+            long teamId = teamId(member.getTeam());
+            if (username != null) {
+                apply(index -> index.put(id, username, age, teamId));
+            }
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        Member member = (Member) event.getEntity();
+        long id = member.getId();
+        String username = member.getUsername();
+        int age = member.getAge();
+        long teamId = teamId(member.getTeam());
+        Object[] oldState = event.getOldState();
+        // 바뀌기 전 username을 모르면 remove가 id로 전체를 찾는다.
+        String oldUsername = oldState == null ? null : (String) oldState[usernameIndex(event.getPersister())];
+        apply(index -> {
+            index.remove(id, oldUsername);
+            if (username != null) {
+                index.put(id, username, age, teamId);
+            }
+        });
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        long id = (Long) event.getId();
+        Object[] deletedState = event.getDeletedState();
+        String username = deletedState == null ? null : (String) deletedState[usernameIndex(event.getPersister())];
+        apply(index -> index.remove(id, username));
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return Member.class.equals(persister.getMappedClass());
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        if ("member".equals(SqlStatements.writtenTable(sql)) && SqlStatements.isBulkWrite(sql, "member_id")) {
+            markDirty();
+        }
+    }
+
+    // 지금 바로 dirty로 바꾸고, 트랜잭션이 끝나면 한 번 더 바꾸고 다시 읽는다.
+    // 끝날 때 또 바꾸는 건 그 사이(SQL이 나가고 커밋하기 전)에 시작한 다시 읽기가 커밋 전 DB를 읽고 dirty를 풀었을 수 있어서.
+    // 롤백돼도 다시 읽는다. 지금 바꾼 dirty를 풀어야 한다.
+    private void markDirty() {
+        dirtyGeneration.incrementAndGet();
+        TransactionCallbacks.afterCompletion(() -> {
+            dirtyGeneration.incrementAndGet();
+            requestReload();
+        });
+    }
+
+    private void requestReload() {
+        if (reloadRequested.compareAndSet(false, true)) {
+            reloader.execute(() -> {
+                reloadRequested.set(false);
+                reload();
+            });
+        }
+    }
+
+    private synchronized void apply(Consumer<OffHeapMemberIndex> change) {
+        change.accept(index);
+        if (pending != null) {
+            pending.add(change);
+        }
+    }
+
+    private void reload() {
+        synchronized (reloadLock) {
+            synchronized (this) {
+                pending = new ArrayList<>();
+            }
+            // 여기까지의 dirty는 이번에 읽는 결과에 다 들어간다.
+            long generation = dirtyGeneration.get();
+            long start = System.nanoTime();
+            OffHeapMemberIndex fresh = new OffHeapMemberIndex(Math.max(expectedSize, index.size()));
+            long count = scan(fresh);
+            synchronized (this) {
+                pending.forEach(change -> change.accept(fresh));
+                pending = null;
+                index = fresh;
+            }
+            loaded = true;
+            cleanGeneration = generation;
+            log.info("member directory loaded: {} members, {} KB off-heap in {} ms",
+                    count, fresh.offHeapBytes() / 1024, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private long scan(OffHeapMemberIndex target) {
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            ScrollableResults results = session.createQuery(
+                            "select m.id, m.username, m.age, t.id from Member m left join m.team t")
+                    .setFetchSize(LOAD_FETCH_SIZE)
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                long count = 0;
+                while (results.next()) {
+                    String username = (String) results.get(1);
+                    if (username == null) {
+                        continue;
+                    }
+                    Long teamId = (Long) results.get(3);
+                    target.put((Long) results.get(0), username, (Integer) results.get(2), teamId == null ? 0 : teamId);
+                    count++;
+                }
+                return count;
+            } finally {
+                results.close();
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    // 프록시를 초기화하지 않고 id만 꺼낸다.
+    private static long teamId(Team team) {
+        if (team == null) {
+            return 0;
+        }
+        Object id = team instanceof HibernateProxy
+                ? ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier()
+                : team.getId();
+        return id == null ? 0 : (Long) id;
+    }
+
+    private static int usernameIndex(EntityPersister persister) {
+        return persister.getEntityMetamodel().getPropertyIndex("username");
+    }
+}
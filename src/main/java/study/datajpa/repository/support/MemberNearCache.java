@@ -0,0 +1,90 @@
+package study.datajpa.repository.support;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.datajpa.dto.MemberDto;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+// id -> MemberDto 캐시. 애플리케이션 메모리에 바로 들고 있어서 자주 찾는 id는 DB는 물론 영속성 컨텍스트 / 2차 캐시까지도 안 간다.
+// 엔티티가 아니라 DTO를 들고 있는다. 영속성 컨텍스트에 묶이지 않고 여러 스레드가 같이 읽어도 안전하다.
+// 카페인은 maximumSize를 넘으면 W-TinyLFU로 밀어낸다. 자주 찾는 id는 한두 번 찾고 마는 id한테 자리를 안 뺏긴다.
+//
+// 지우는 쪽은 MemberNearCacheListener. 회원이 바뀌면 그 id, 벌크 연산이면 전부 지운다.
+// 조회와 지우기가 겹칠 때 옛날 값이 남지 않도록 MemberQueryCache처럼 세대(generation) 번호를 쓴다.
+@Component
+public class MemberNearCache {
+
+    private static final int STRIPES = 1024;
+
+    private final Cache<Long, MemberDto> cache;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final AtomicLong globalGeneration = new AtomicLong();
+
+    public MemberNearCache(@Value("${member.near-cache.maximum-size:10000}") long maximumSize,
+                           @Value("${member.near-cache.ttl:10m}") Duration ttl,
+                           MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "member.near-cache");
+    }
+
+    public Optional<MemberDto> get(Long id, Function<Long, Optional<MemberDto>> loader) {
+        // 쓰기 트랜잭션 안에서는 커밋 전 값을 읽어야 할 수도 있고, 커밋 전 값을 캐시에 넣으면 안 된다.
+        if (TransactionCallbacks.inReadWriteTransaction()) {
+            return loader.apply(id);
+        }
+
+        MemberDto cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        long stamp = stamp(id);
+        Optional<MemberDto> loaded = loader.apply(id);
+        // 없는 id는 넣지 않는다. 나중에 등록되면 바로 보여야 한다.
+        loaded.ifPresent(dto -> put(id, dto, stamp));
+        return loaded;
+    }
+
+    public void evict(Long id) {
+        generations.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    public void evictAll() {
+        globalGeneration.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    // 조회하는 사이에 지워졌으면 넣지 않는다.
+    // 확인하고 넣는 사이에 지워질 수도 있어서, 넣고 나서 한 번 더 확인하고 바뀌었으면 도로 뺀다.
+    private void put(Long id, MemberDto dto, long stamp) {
+        if (stamp(id) != stamp) {
+            return;
+        }
+        cache.put(id, dto);
+        if (stamp(id) != stamp) {
+            cache.invalidate(id);
+        }
+    }
+
+    private long stamp(Long id) {
+        return globalGeneration.get() + generations.get(stripe(id));
+    }
+
+    private static int stripe(Long id) {
+        return Long.hashCode(id) & (STRIPES - 1);
+    }
+}
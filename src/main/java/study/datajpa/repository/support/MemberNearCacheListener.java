@@ -0,0 +1,77 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import study.datajpa.entity.Member;
+
+import javax.persistence.EntityManagerFactory;
+
+// 회원이 수정 / 삭제되면 MemberNearCache에서 그 id만 지운다. 등록은 캐시에 없는 id라서 안 지운다.
+// 엔티티(@EntityListeners)가 아니라 하이버네이트 이벤트 리스너로 붙인다. 엔티티가 캐시 쪽 코드를 몰라도 된다. (MemberQueryCacheEvictor와 같은 방식)
+// 벌크 연산과 팀 수정은 엔티티 이벤트가 안 나가거나(벌크) 어느 회원인지 모르기(팀 이름) 때문에 SQL을 보고 전부 지운다.
+// flush 시점에 한 번, 트랜잭션이 끝날 때 한 번 더 지운다. 그 사이에 다른 스레드가 커밋 전 값으로 다시 채워 넣을 수 있기 때문.
+@Component
+public class MemberNearCacheListener implements PostUpdateEventListener, PostDeleteEventListener, SqlStatementListener {
+
+    private final MemberNearCache cache;
+
+    public MemberNearCacheListener(MemberNearCache cache,
+                                   EntityManagerFactory entityManagerFactory,
+                                   SqlStatementInspector sqlStatementInspector) {
+        this.cache = cache;
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_UPDATE, this);
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_DELETE, this);
+        sqlStatementInspector.addListener(this);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Member) {
+            evict(((Member) event.getEntity()).getId());
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Member) {
+            evict(((Member) event.getEntity()).getId());
+        }
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        String table = SqlStatements.writtenTable(sql);
+        if ("member".equals(table)) {
+            // 캐시에 있는 건 username과 팀 이름. 나이만 바꾸는 벌크 연산(bulkAgePlus 등)은 상관없다.
+            if (SqlStatements.isBulkWrite(sql, "member_id")
+                    && (SqlStatements.isDelete(sql)
+                    || SqlStatements.assignsColumn(sql, "username")
+                    || SqlStatements.assignsColumn(sql, "team_id"))) {
+                evictAll();
+            }
+        } else if ("team".equals(table) && !SqlStatements.isInsert(sql)) {
+            evictAll();
+        }
+    }
+
+    // 커밋된 다음에 지우는 게 아니라 flush 할 때 바로 지운다. 그래서 커밋 후 처리가 필요 없다.
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private void evict(Long id) {
+        cache.evict(id);
+        TransactionCallbacks.afterCompletion(() -> cache.evict(id));
+    }
+
+    private void evictAll() {
+        cache.evictAll();
+        TransactionCallbacks.afterCompletion(cache::evictAll);
+    }
+}
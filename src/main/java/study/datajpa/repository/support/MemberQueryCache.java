@@ -0,0 +1,154 @@
+package study.datajpa.repository.support;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// username 조회 메서드의 결과 캐시. 엔티티가 아니라 id 목록만 들고 있는다.
+// 엔티티는 꺼낼 때마다 em.find로 다시 찾는다. 영속성 컨텍스트 -> 2차 캐시 순서로 찾기 때문에 DB까지는 안 간다.
+//
+// 지우는 방식: username별로 세대(generation) 번호를 둔다. 캐시에 넣을 때 그 번호를 같이 적어 두고,
+// 꺼낼 때 번호가 그대로인지 확인한다. 회원이 바뀌면 번호만 올리면 되니까 캐시 전체를 뒤질 필요가 없다.
+// 번호는 username 해시로 나눈 줄(stripe)마다 하나씩이다. 같은 줄에 걸린 다른 username도 같이 무효가 될 수 있지만 틀린 값이 나가지는 않는다.
+@Component
+public class MemberQueryCache {
+
+    private static final int STRIPES = 1024;
+    // 이 트랜잭션에서 회원을 바꿨다는 표시. 트랜잭션 리소스로 묶어 둔다.
+    private static final Object WRITTEN = new Object();
+
+    private final Cache<Key, Entry> results;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final AtomicLong globalGeneration = new AtomicLong();
+
+    public MemberQueryCache(@Value("${member.query-cache.maximum-size:10000}") long maximumSize,
+                            @Value("${member.query-cache.ttl:5m}") Duration ttl) {
+        this.results = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public Key key(String method, Object[] args) {
+        return new Key(method, args);
+    }
+
+    // 조회 쿼리를 날리기 전에 받아 둔다. 쿼리 도중에 회원이 바뀌었으면 put 한 값은 꺼낼 때 무효가 된다.
+    public long stamp(Key key) {
+        long stamp = globalGeneration.get();
+        for (String username : key.usernames) {
+            stamp += generations.get(stripe(username));
+        }
+        return stamp;
+    }
+
+    public List<Long> get(Key key) {
+        Entry entry = results.getIfPresent(key);
+        if (entry == null || entry.stamp != stamp(key)) {
+            return null;
+        }
+        return entry.ids;
+    }
+
+    public void put(Key key, List<Long> ids, long stamp) {
+        results.put(key, new Entry(ids, stamp));
+    }
+
+    public void evict(String username) {
+        generations.incrementAndGet(stripe(username));
+    }
+
+    public void evictAll() {
+        globalGeneration.incrementAndGet();
+        results.invalidateAll();
+    }
+
+    // 회원을 바꾼 트랜잭션은 커밋 전까지 캐시를 쓰면 안 된다. 다른 스레드가 커밋 전 (옛날) 값으로 캐시를 다시 채워 놓을 수 있기 때문.
+    public void markWritten() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(WRITTEN)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(WRITTEN, Boolean.TRUE);
+        TransactionCallbacks.afterCompletion(() -> TransactionSynchronizationManager.unbindResourceIfPossible(WRITTEN));
+    }
+
+    public boolean writtenInCurrentTransaction() {
+        return TransactionSynchronizationManager.hasResource(WRITTEN);
+    }
+
+    private static int stripe(String username) {
+        return username == null ? 0 : (username.hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+    public static final class Key {
+        private final String method;
+        private final List<Object> args;
+        private final List<String> usernames;
+
+        private Key(String method, Object[] args) {
+            List<Object> copied = new ArrayList<>(args.length);
+            List<String> usernames = new ArrayList<>();
+            for (Object arg : args) {
+                if (arg instanceof Collection) {
+                    // 호출한 쪽에서 컬렉션을 나중에 바꿀 수도 있으니 복사해 둔다.
+                    List<Object> values = new ArrayList<>((Collection<?>) arg);
+                    for (Object value : values) {
+                        if (value instanceof String) {
+                            usernames.add((String) value);
+                        }
+                    }
+                    copied.add(values);
+                } else {
+                    if (arg instanceof String || arg == null) {
+                        usernames.add((String) arg);
+                    }
+                    copied.add(arg);
+                }
+            }
+            this.method = method;
+            this.args = Collections.unmodifiableList(copied);
+            this.usernames = Collections.unmodifiableList(usernames);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return method.equals(key.method) && args.equals(key.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(method, args);
+        }
+
+        @Override
+        public String toString() {
+            return method + Arrays.toString(args.toArray());
+        }
+    }
+
+    private static final class Entry {
+        private final List<Long> ids;
+        private final long stamp;
+
+        private Entry(List<Long> ids, long stamp) {
+            this.ids = ids;
+            this.stamp = stamp;
+        }
+    }
+}
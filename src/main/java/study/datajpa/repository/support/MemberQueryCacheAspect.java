@@ -0,0 +1,128 @@
+package study.datajpa.repository.support;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.hibernate.Session;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+// @CachedByUsername 붙은 조회 메서드를 가로챈다.
+// 캐시에 id 목록이 있으면 쿼리 대신 em.find로 엔티티를 꺼낸다. Member는 2차 캐시에 올라가 있어서 JDBC까지 안 간다.
+// 영속성 컨텍스트를 거치기 때문에 같은 트랜잭션 안에서는 쿼리로 가져온 것과 똑같은 인스턴스가 나온다.
+@Aspect
+@Component
+public class MemberQueryCacheAspect {
+
+    private final MemberQueryCache cache;
+    private final EntityManagerFactory entityManagerFactory;
+    private final EntityManager em;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public MemberQueryCacheAspect(MemberQueryCache cache,
+                                  EntityManagerFactory entityManagerFactory,
+                                  EntityManager em,
+                                  PlatformTransactionManager transactionManager) {
+        this.cache = cache;
+        this.entityManagerFactory = entityManagerFactory;
+        this.em = em;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    // 어노테이션이 붙은 메서드에만 프록시가 걸린다. 매칭은 빈을 만들 때 한 번만 한다.
+    @Around("@annotation(study.datajpa.repository.support.CachedByUsername)")
+    public Object cached(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (QueryWarmup.isRunning() || bypass()) {
+            return joinPoint.proceed();
+        }
+
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+
+        MemberQueryCache.Key key = cache.key(method.getDeclaringClass().getSimpleName() + "." + method.getName(), joinPoint.getArgs());
+        List<Long> ids = cache.get(key);
+        if (ids != null) {
+            List<Member> members = readOnlyTransaction.execute(status -> load(ids));
+            if (members != null) {
+                return shape(method.getReturnType(), members);
+            }
+        }
+
+        long stamp = cache.stamp(key);
+        Object result = joinPoint.proceed();
+        List<Long> loaded = idsOf(result);
+        if (loaded != null) {
+            cache.put(key, loaded, stamp);
+        }
+        return result;
+    }
+
+    // 이 트랜잭션에서 회원을 바꿨거나 아직 flush 안 된 변경이 있으면 캐시를 건너뛰고 쿼리를 날린다.
+    // 쿼리를 날려야 auto flush가 일어나고, 그래야 방금 바꾼 값까지 보인다.
+    private boolean bypass() {
+        if (cache.writtenInCurrentTransaction()) {
+            return true;
+        }
+        EntityManager current = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+        return current != null && current.unwrap(Session.class).isDirty();
+    }
+
+    // 캐시를 넣은 뒤에 지워진 회원이 있으면 null. 캐시가 없는 것으로 본다.
+    private List<Member> load(List<Long> ids) {
+        List<Member> members = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Member member = em.find(Member.class, id);
+            if (member == null) {
+                return null;
+            }
+            members.add(member);
+        }
+        return members;
+    }
+
+    private static Object shape(Class<?> returnType, List<Member> members) {
+        if (Optional.class.equals(returnType)) {
+            return members.stream().findFirst();
+        }
+        if (Member.class.equals(returnType)) {
+            return members.isEmpty() ? null : members.get(0);
+        }
+        return members;
+    }
+
+    private static List<Long> idsOf(Object result) {
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        if (result instanceof Optional) {
+            return idsOf(((Optional<?>) result).orElse(null));
+        }
+        if (result instanceof Member) {
+            return Collections.singletonList(((Member) result).getId());
+        }
+        if (result instanceof Collection) {
+            List<Long> ids = new ArrayList<>(((Collection<?>) result).size());
+            for (Object element : (Collection<?>) result) {
+                if (!(element instanceof Member)) {
+                    return null;
+                }
+                ids.add(((Member) element).getId());
+            }
+            return Collections.unmodifiableList(ids);
+        }
+        return null;
+    }
+}
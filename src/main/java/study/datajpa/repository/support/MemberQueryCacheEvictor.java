@@ -0,0 +1,99 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import study.datajpa.entity.Member;
+
+import javax.persistence.EntityManagerFactory;
+
+// 회원이 등록 / 수정 / 삭제되면 그 username의 조회 캐시만 지운다. 수정이면 바뀌기 전 username과 바뀐 username 둘 다.
+// 벌크 연산(bulkAgePlus 등)은 엔티티 이벤트가 안 나가기 때문에 SQL을 보고 판단한다. username을 바꾸거나 지우는 벌크 연산이면 전부 지운다.
+// flush 시점에 한 번, 트랜잭션이 끝날 때 한 번 더 지운다. 그 사이에 다른 스레드가 커밋 전 값으로 다시 채워 넣을 수 있기 때문.
+@Component
+public class MemberQueryCacheEvictor implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener, SqlStatementListener {
+
+    private final MemberQueryCache cache;
+
+    public MemberQueryCacheEvictor(MemberQueryCache cache,
+                                   EntityManagerFactory entityManagerFactory,
+                                   SqlStatementInspector sqlStatementInspector) {
+        this.cache = cache;
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_INSERT, this);
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_UPDATE, this);
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_DELETE, this);
+        sqlStatementInspector.addListener(this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            evict(((Member) event.getEntity()).getUsername());
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        evict(((Member) event.getEntity()).getUsername());
+
+        Object[] oldState = event.getOldState();
+        if (oldState == null) {
+            // 바뀌기 전 값을 모르면 (detached 엔티티를 바로 update 한 경우 등) 어느 username이었는지 알 수 없다.
+            evictAll();
+            return;
+        }
+        evict((String) oldState[usernameIndex(event.getPersister())]);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        Object[] deletedState = event.getDeletedState();
+        evict(deletedState != null
+                ? (String) deletedState[usernameIndex(event.getPersister())]
+                : ((Member) event.getEntity()).getUsername());
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        if (!"member".equals(SqlStatements.writtenTable(sql)) || !SqlStatements.isBulkWrite(sql, "member_id")) {
+            return;
+        }
+        if (SqlStatements.isDelete(sql) || SqlStatements.assignsColumn(sql, "username")) {
+            evictAll();
+        }
+    }
+
+    // 커밋된 다음에 지우는 게 아니라 flush 할 때 바로 지운다. 그래서 커밋 후 처리가 필요 없다.
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private void evict(String username) {
+        cache.markWritten();
+        cache.evict(username);
+        TransactionCallbacks.afterCompletion(() -> cache.evict(username));
+    }
+
+    private void evictAll() {
+        cache.markWritten();
+        cache.evictAll();
+        TransactionCallbacks.afterCompletion(cache::evictAll);
+    }
+
+    private static int usernameIndex(EntityPersister persister) {
+        return persister.getEntityMetamodel().getPropertyIndex("username");
+    }
+}
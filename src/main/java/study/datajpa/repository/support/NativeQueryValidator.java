@@ -0,0 +1,218 @@
+package study.datajpa.repository.support;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.core.RepositoryInformation;
+import org.springframework.data.repository.support.Repositories;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 네이티브 쿼리(@Query(nativeQuery = true))는 애플리케이션 로딩 시점에 문법도 실행 계획도 확인하지 않는다.
+// 뜰 때 H2에 EXPLAIN을 날려서 실행 계획을 보고 아래를 잡아낸다. include-jpql이면 JPQL @Query가 만드는 SQL도 본다.
+// - CARTESIAN: 조인 조건(on)이 없거나 항상 참이다. 회원 x 팀 곱만큼 row가 나온다.
+// - UNINDEXED_JOIN: 조인 조건은 있는데 인덱스를 못 타서 바깥 row마다 조인 테이블을 전부 읽는다.
+// - FULL_SCAN: where가 있는데 인덱스를 못 타서 테이블을 전부 읽는다.
+// - UNBOUNDED_SCAN: where도 limit도 없이 테이블 전체를 읽어서 돌려준다. Pageable 파라미터가 있거나 집계(count 등)면 제외.
+// strict면 하나라도 걸리면 애플리케이션이 안 뜬다. (테스트에서 켜 두면 테스트가 실패한다)
+@Slf4j
+@Component
+public class NativeQueryValidator implements SmartInitializingSingleton {
+
+    public enum Problem {
+        CARTESIAN, UNINDEXED_JOIN, FULL_SCAN, UNBOUNDED_SCAN
+    }
+
+    // 실행 계획에서 테이블 하나 읽는 부분. FROM "PUBLIC"."MEMBER" "M" /* PUBLIC.MEMBER.tableScan */
+    private static final Pattern TABLE_ACCESS = Pattern.compile(
+            "\\b(FROM|JOIN)\\s+\"?\\w+\"?\\.\"?(\\w+)\"?(?:\\s+\"?(\\w+)\"?)?\\s*/\\*\\s*(.*?)\\s*\\*/", Pattern.DOTALL);
+    private static final Pattern NEXT_CLAUSE = Pattern.compile("\\b(?:LEFT|RIGHT|INNER|CROSS|JOIN|WHERE|GROUP|ORDER|LIMIT|FETCH|OFFSET)\\b");
+    private static final Pattern TRIVIAL_ON = Pattern.compile("^ON\\s+(?:1\\s*=\\s*1|TRUE)\\b");
+    private static final Pattern WHERE = Pattern.compile("\\bwhere\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern LIMIT = Pattern.compile("\\b(?:limit|fetch\\s+first)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern AGGREGATE = Pattern.compile("^\\s*select\\s+(?:count|min|max|sum|avg)\\s*\\(", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NAMED_OR_NUMBERED_PARAMETER = Pattern.compile("(?<![:\\w]):\\w+|\\?\\d+");
+
+    private final ListableBeanFactory beanFactory;
+    private final EntityManagerFactory entityManagerFactory;
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final boolean strict;
+    private final boolean includeJpql;
+
+    private volatile List<Finding> findings = Collections.emptyList();
+
+    public NativeQueryValidator(ListableBeanFactory beanFactory,
+                                EntityManagerFactory entityManagerFactory,
+                                DataSource dataSource,
+                                @Value("${sql.explain.enabled:true}") boolean enabled,
+                                @Value("${sql.explain.strict:false}") boolean strict,
+                                @Value("${sql.explain.include-jpql:false}") boolean includeJpql) {
+        this.beanFactory = beanFactory;
+        this.entityManagerFactory = entityManagerFactory;
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.strict = strict;
+        this.includeJpql = includeJpql;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        List<Finding> findings;
+        try (Connection connection = dataSource.getConnection()) {
+            if (!"H2".equals(connection.getMetaData().getDatabaseProductName())) {
+                log.info("native query validation skipped: EXPLAIN output is only parsed for H2");
+                return;
+            }
+            findings = validate(connection);
+        } catch (SQLException e) {
+            throw new IllegalStateException("native query validation failed", e);
+        }
+
+        this.findings = findings;
+        for (Finding finding : findings) {
+            log.warn("{} in {}: {}\n  sql: {}\n  plan: {}",
+                    finding.problem, finding.method, finding.detail, finding.sql, finding.plan);
+        }
+        if (strict && !findings.isEmpty()) {
+            throw new IllegalStateException(findings.size() + " query plan problem(s) found. see the log above. (sql.explain.strict)");
+        }
+    }
+
+    public List<Finding> getFindings() {
+        return findings;
+    }
+
+    // 쿼리 하나 검사. bounded면 (페이징 등으로 limit이 붙는 쿼리) 전체 스캔이라도 UNBOUNDED_SCAN은 안 본다.
+    public List<Finding> check(Connection connection, String method, String sql, boolean bounded) throws SQLException {
+        String plan = explain(connection, sql);
+        List<Finding> result = new ArrayList<>();
+
+        // where / limit 여부는 원래 SQL에서 본다. H2는 inner join 조건을 실행 계획의 WHERE로 옮겨 적는다.
+        Matcher access = TABLE_ACCESS.matcher(plan);
+        boolean first = true;
+        while (access.find()) {
+            String table = access.group(2);
+            String alias = access.group(3) != null ? access.group(3) : table;
+            boolean tableScan = access.group(4).endsWith(".tableScan");
+            if (first) {
+                first = false;
+                if (tableScan && WHERE.matcher(sql).find()) {
+                    result.add(new Finding(Problem.FULL_SCAN, method, table + ": where condition cannot use an index", sql, plan));
+                } else if (tableScan && !bounded && !LIMIT.matcher(sql).find() && !AGGREGATE.matcher(sql).find()) {
+                    result.add(new Finding(Problem.UNBOUNDED_SCAN, method, table + ": whole table returned without where or limit", sql, plan));
+                }
+                continue;
+            }
+            if (!tableScan) {
+                continue; // 인덱스로 찾아 들어갔으면 조인 조건이 그 인덱스 조건이다.
+            }
+
+            String joinCondition = joinCondition(plan, access.end());
+            boolean hasOn = joinCondition.startsWith("ON") && !TRIVIAL_ON.matcher(joinCondition).find();
+            if (hasOn || referencedInWhere(plan, alias)) {
+                result.add(new Finding(Problem.UNINDEXED_JOIN, method, table + ": join condition cannot use an index", sql, plan));
+            } else {
+                result.add(new Finding(Problem.CARTESIAN, method, table + ": join without a join condition", sql, plan));
+            }
+        }
+        return result;
+    }
+
+    private List<Finding> validate(Connection connection) throws SQLException {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        Repositories repositories = new Repositories(beanFactory);
+        List<Finding> findings = new ArrayList<>();
+
+        for (Class<?> domainType : repositories) {
+            RepositoryInformation information = repositories.getRequiredRepositoryInformation(domainType);
+            for (Method method : information.getQueryMethods()) {
+                Query query = method.getAnnotation(Query.class);
+                if (query == null || query.value().isEmpty() || (!query.nativeQuery() && !includeJpql)) {
+                    continue;
+                }
+                String name = information.getRepositoryInterface().getSimpleName() + "." + method.getName();
+                boolean bounded = Arrays.asList(method.getParameterTypes()).contains(Pageable.class);
+
+                List<String> statements = query.nativeQuery()
+                        ? Collections.singletonList(query.value())
+                        : Arrays.asList(sessionFactory.getQueryPlanCache()
+                        .getHQLQueryPlan(query.value(), false, Collections.emptyMap())
+                        .getSqlStrings());
+                for (String sql : statements) {
+                    if (!sql.trim().toLowerCase(Locale.ROOT).startsWith("select")) {
+                        continue; // update / delete는 EXPLAIN 모양이 달라서 안 본다.
+                    }
+                    findings.addAll(check(connection, name, sql, bounded));
+                }
+            }
+        }
+        return findings;
+    }
+
+    // :name, ?1 은 JDBC 파라미터(?)로 바꾸고 전부 null로 채운다. 실행 계획은 값과 상관없이 prepare 할 때 정해진다.
+    private static String explain(Connection connection, String sql) throws SQLException {
+        String jdbcSql = NAMED_OR_NUMBERED_PARAMETER.matcher(sql).replaceAll("?");
+        try (PreparedStatement statement = connection.prepareStatement("explain " + jdbcSql)) {
+            int parameters = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                statement.setNull(i, Types.NULL);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                StringBuilder plan = new StringBuilder();
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+                return plan.toString().trim();
+            }
+        }
+    }
+
+    // inner join 조건이 WHERE로 옮겨졌는지. WHERE 뒤에 그 별칭이 나오면 조건이 있다고 본다.
+    private static boolean referencedInWhere(String plan, String alias) {
+        int where = plan.lastIndexOf("WHERE");
+        return where >= 0 && Pattern.compile("\"?\\b" + Pattern.quote(alias) + "\"?\\.").matcher(plan.substring(where)).find();
+    }
+
+    // 조인 테이블 접근 다음부터 다음 조인 / where 전까지. "ON M.TEAM_ID = T.TEAM_ID"
+    private static String joinCondition(String plan, int from) {
+        Matcher next = NEXT_CLAUSE.matcher(plan);
+        int end = next.find(from) ? next.start() : plan.length();
+        return plan.substring(from, end).trim();
+    }
+
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Finding {
+        private final Problem problem;
+        private final String method;
+        private final String detail;
+        private final String sql;
+        private final String plan;
+    }
+}
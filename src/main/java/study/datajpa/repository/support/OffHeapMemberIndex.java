@@ -0,0 +1,289 @@
+package study.datajpa.repository.support;
+
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+
+// username -> (id, age, teamId) 해시 인덱스. 힙 밖(direct ByteBuffer)에 고정 크기 슬롯으로 들고 있어서 몇백만 건이어도 GC가 들여다볼 객체가 없다.
+// 슬롯(32바이트): hash(int) | username 길이(int) | id(long) | teamId(long, 팀 없으면 0) | age(int) | username 위치(int)
+// username 글자(char)는 따로 keys 버퍼에 이어 붙인다. 조회할 때 String.charAt과 바로 비교해서 문자열을 새로 만들지 않는다.
+// 충돌은 오픈 어드레싱(선형 탐색). 지운 슬롯은 tombstone으로 남겼다가 다시 만들 때(rebuild) 정리한다.
+//
+// username은 유니크가 아니다. 같은 username이 여러 명이면 그 중 하나가 나온다.
+//
+// 읽기는 락을 안 잡는다(seqlock). 쓰기 전에 version을 홀수로, 다 쓰고 짝수로 올린다.
+// 읽는 쪽은 시작과 끝의 version이 같은 짝수일 때만 결과를 믿고, 아니면 다시 읽는다. 쓰기끼리는 synchronized.
+public class OffHeapMemberIndex {
+
+    private static final int SLOT_BYTES = 32;
+    private static final int HASH = 0;
+    private static final int KEY_LENGTH = 4;
+    private static final int ID = 8;
+    private static final int TEAM_ID = 16;
+    private static final int AGE = 24;
+    private static final int KEY_OFFSET = 28;
+
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = 1;
+    private static final int MAX_CAPACITY = 1 << 25; // 슬롯 위치(int 바이트 오프셋)가 넘치지 않는 만큼.
+
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(OffHeapMemberIndex.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @SuppressWarnings("unused") // VERSION으로만 읽고 쓴다.
+    private long version;
+    private volatile Table table;
+
+    public OffHeapMemberIndex(int expectedSize) {
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1);
+        this.table = new Table(Math.min(capacity, MAX_CAPACITY), Math.max(1024, expectedSize * 32));
+    }
+
+    // 락 없음, 할당 없음. 찾으면 into에 채우고 true.
+    public boolean find(String username, Entry into) {
+        int hash = hash(username);
+        while (true) {
+            long before = (long) VERSION.getAcquire(this);
+            if ((before & 1) == 0) {
+                int found;
+                try {
+                    found = table.find(username, hash, into) ? 1 : 0;
+                } catch (IndexOutOfBoundsException e) {
+                    found = -1; // 쓰는 도중의 값을 읽었다. 다시 읽는다.
+                }
+                VarHandle.loadLoadFence();
+                if (found >= 0 && (long) VERSION.getAcquire(this) == before) {
+                    return found == 1;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // 같은 (username, id)가 있으면 덮어쓴다. username이 바뀐 경우는 remove를 먼저 부른다.
+    public synchronized void put(long id, String username, int age, long teamId) {
+        ensureCapacity(username.length());
+        beginWrite();
+        try {
+            table.insert(hash(username), username, id, age, teamId);
+        } finally {
+            endWrite();
+        }
+    }
+
+    // username을 모르면 null. 그때는 슬롯 전체에서 id를 찾는다.
+    public synchronized boolean remove(long id, String username) {
+        beginWrite();
+        try {
+            return table.remove(id, username == null ? 0 : hash(username), username);
+        } finally {
+            endWrite();
+        }
+    }
+
+    public int size() {
+        return table.live;
+    }
+
+    public long offHeapBytes() {
+        Table current = table;
+        return (long) current.slots.capacity() + current.keys.capacity();
+    }
+
+    // 슬롯이 반 이상 찼거나 keys 버퍼에 자리가 없으면 더 큰 테이블로 옮긴다.
+    // 새 테이블은 아무도 안 보는 동안 다 채우고 마지막에 바꿔 끼운다. 그동안 읽는 쪽은 (안 바뀌는) 옛날 테이블을 읽는다.
+    private void ensureCapacity(int keyLength) {
+        Table current = table;
+        int capacity = current.mask + 1;
+        boolean slotsFull = current.used + 1 > capacity / 2;
+        boolean keysFull = current.keyBytes + keyLength * 2 > current.keys.capacity();
+        if (!slotsFull && !keysFull) {
+            return;
+        }
+        int newCapacity = current.live + 1 > capacity / 4 && capacity < MAX_CAPACITY ? capacity * 2 : capacity;
+        int newKeyBytes = Math.max(current.keys.capacity(), (current.liveKeyBytes + keyLength * 2) * 2);
+        Table rebuilt = new Table(newCapacity, newKeyBytes);
+        current.copyTo(rebuilt);
+
+        beginWrite();
+        table = rebuilt;
+        endWrite();
+    }
+
+    private void beginWrite() {
+        VERSION.setVolatile(this, (long) VERSION.getVolatile(this) + 1);
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        VERSION.setRelease(this, (long) VERSION.getVolatile(this) + 1);
+    }
+
+    // 0(빈 칸), 1(tombstone)과 안 겹치게 맨 위 비트를 켠다.
+    private static int hash(String username) {
+        int h = username.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) | 0x80000000;
+    }
+
+    private static final class Table {
+
+        private final ByteBuffer slots;
+        private final ByteBuffer keys;
+        private final int mask;
+        private int used; // 살아 있는 슬롯 + tombstone
+        private int live;
+        private int keyBytes;
+        private int liveKeyBytes;
+
+        Table(int capacity, int keyCapacity) {
+            this.slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+            this.keys = ByteBuffer.allocateDirect(keyCapacity);
+            this.mask = capacity - 1;
+        }
+
+        boolean find(String username, int hash, Entry into) {
+            for (int probe = 0, i = hash & mask; probe <= mask; probe++, i = (i + 1) & mask) {
+                int base = i * SLOT_BYTES;
+                int h = slots.getInt(base + HASH);
+                if (h == EMPTY) {
+                    return false;
+                }
+                if (h == hash && keyEquals(base, username)) {
+                    into.id = slots.getLong(base + ID);
+                    into.age = slots.getInt(base + AGE);
+                    into.teamId = slots.getLong(base + TEAM_ID);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void insert(int hash, String username, long id, int age, long teamId) {
+            int target = -1;
+            for (int probe = 0, i = hash & mask; probe <= mask; probe++, i = (i + 1) & mask) {
+                int base = i * SLOT_BYTES;
+                int h = slots.getInt(base + HASH);
+                if (h == EMPTY) {
+                    if (target < 0) {
+                        target = base;
+                    }
+                    break;
+                }
+                if (h == TOMBSTONE) {
+                    if (target < 0) {
+                        target = base;
+                    }
+                } else if (h == hash && slots.getLong(base + ID) == id && keyEquals(base, username)) {
+                    slots.putInt(base + AGE, age);
+                    slots.putLong(base + TEAM_ID, teamId);
+                    return;
+                }
+            }
+
+            boolean reuseTombstone = slots.getInt(target + HASH) == TOMBSTONE;
+            int keyOffset = keyBytes;
+            for (int c = 0; c < username.length(); c++) {
+                keys.putChar(keyOffset + c * 2, username.charAt(c));
+            }
+            keyBytes += username.length() * 2;
+            liveKeyBytes += username.length() * 2;
+
+            slots.putInt(target + KEY_LENGTH, username.length());
+            slots.putInt(target + KEY_OFFSET, keyOffset);
+            slots.putLong(target + ID, id);
+            slots.putLong(target + TEAM_ID, teamId);
+            slots.putInt(target + AGE, age);
+            slots.putInt(target + HASH, hash);
+            live++;
+            if (!reuseTombstone) {
+                used++;
+            }
+        }
+
+        boolean remove(long id, int hash, String username) {
+            if (username != null) {
+                for (int probe = 0, i = hash & mask; probe <= mask; probe++, i = (i + 1) & mask) {
+                    int base = i * SLOT_BYTES;
+                    int h = slots.getInt(base + HASH);
+                    if (h == EMPTY) {
+                        return false;
+                    }
+                    if (h == hash && slots.getLong(base + ID) == id && keyEquals(base, username)) {
+                        tombstone(base);
+                        return true;
+                    }
+                }
+                return false;
+            }
+            for (int base = 0; base < slots.capacity(); base += SLOT_BYTES) {
+                int h = slots.getInt(base + HASH);
+                if (h != EMPTY && h != TOMBSTONE && slots.getLong(base + ID) == id) {
+                    tombstone(base);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void copyTo(Table target) {
+            for (int base = 0; base < slots.capacity(); base += SLOT_BYTES) {
+                int h = slots.getInt(base + HASH);
+                if (h == EMPTY || h == TOMBSTONE) {
+                    continue;
+                }
+                target.insert(h, key(base), slots.getLong(base + ID), slots.getInt(base + AGE), slots.getLong(base + TEAM_ID));
+            }
+        }
+
+        private void tombstone(int base) {
+            slots.putInt(base + HASH, TOMBSTONE);
+            live--;
+            liveKeyBytes -= slots.getInt(base + KEY_LENGTH) * 2;
+        }
+
+        private boolean keyEquals(int base, String username) {
+            int length = slots.getInt(base + KEY_LENGTH);
+            if (length != username.length()) {
+                return false;
+            }
+            int offset = slots.getInt(base + KEY_OFFSET);
+            for (int c = 0; c < length; c++) {
+                if (keys.getChar(offset + c * 2) != username.charAt(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String key(int base) {
+            int length = slots.getInt(base + KEY_LENGTH);
+            int offset = slots.getInt(base + KEY_OFFSET);
+            char[] chars = new char[length];
+            for (int c = 0; c < length; c++) {
+                chars[c] = keys.getChar(offset + c * 2);
+            }
+            return new String(chars);
+        }
+    }
+
+    // 조회 결과. 호출하는 쪽이 하나 만들어서 계속 재사용하면 조회마다 할당이 없다.
+    @Getter
+    public static final class Entry {
+        private long id;
+        private int age;
+        private long teamId; // 팀이 없으면 0
+
+        public boolean hasTeam() {
+            return teamId != 0;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package study.datajpa.repository.support;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.OptimisticLockException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// 낙관적 락 충돌(version 불일치)이 나면 트랜잭션을 통째로 다시 실행한다.
+// 시도할 때마다 새 트랜잭션(REQUIRES_NEW)이라서 work 안에서 엔티티를 다시 읽으면 최신 값에 변경을 다시 적용하게 된다.
+// 다시 시도하기 전에는 잠깐 쉰다. 쉬는 시간은 시도할수록 두 배씩 늘리되 (최대값까지) 0 ~ 그 값 사이에서 랜덤으로 고른다.
+// 같이 충돌한 트랜잭션들이 똑같은 타이밍에 다시 부딪히지 않게 하려는 것.
+@Slf4j
+@Component
+public class OptimisticLockRetryTemplate {
+
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    public OptimisticLockRetryTemplate(PlatformTransactionManager transactionManager,
+                                       @Value("${optimistic-lock.retry.max-attempts:5}") int maxAttempts,
+                                       @Value("${optimistic-lock.retry.initial-backoff:5ms}") Duration initialBackoff,
+                                       @Value("${optimistic-lock.retry.max-backoff:100ms}") Duration maxBackoff) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+    }
+
+    public <T> T execute(Supplier<T> work) {
+        executions.increment();
+        for (int attempt = 1; ; attempt++) {
+            attempts.increment();
+            try {
+                // 충돌은 flush / 커밋 시점에 나기 때문에 커밋까지 이 안에서 끝나야 한다.
+                return transactionTemplate.execute(status -> work.get());
+            } catch (RuntimeException e) {
+                if (!isConflict(e)) {
+                    throw e;
+                }
+                conflicts.increment();
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    throw e;
+                }
+                log.debug("optimistic lock conflict, retry {}/{}", attempt, maxAttempts);
+                backoff(attempt, e);
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(executions.sum(), attempts.sum(), conflicts.sum(), exhausted.sum());
+    }
+
+    private void backoff(int attempt, RuntimeException conflict) {
+        long ceiling = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt - 1, 30));
+        long sleepNanos = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflict;
+        }
+    }
+
+    // 리포지토리 / 트랜잭션 매니저를 거치면 스프링 예외로 바뀌어 있고, em을 직접 쓰면 JPA 예외 그대로 올라온다.
+    private static boolean isConflict(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockingFailureException || t instanceof OptimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Stats {
+        private final long executions;
+        private final long attempts;
+        private final long conflicts;
+        private final long exhausted; // 재시도까지 다 해도 실패한 횟수.
+
+        // 시도 한 번이 충돌로 끝날 확률.
+        public double getConflictRate() {
+            return attempts == 0 ? 0 : (double) conflicts / attempts;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package study.datajpa.repository.support;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 페이징 토탈 카운트를 조건별로 짧게 캐시한다.
+// 테이블에 insert / update / delete가 한 번이라도 나가면 (bulkAgePlus 같은 벌크 연산 포함) 그 테이블 카운트는 전부 버린다.
+// SQL이 나갈 때 한 번, 트랜잭션이 끝날 때 한 번 더 버린다. 그 사이(커밋 전)에 다른 커넥션에서 센 값은 옛날 값인데 새 세대로 들어갈 수 있기 때문.
+@Component
+public class PageCountCache implements SqlStatementListener {
+
+    private final long ttlNanos;
+    private final Map<String, Map<String, Entry>> counts = new ConcurrentHashMap<>();
+    // 쓰기가 일어날 때마다 올라간다. 카운트 쿼리가 도는 중에 쓰기가 끼어들었으면 그 결과는 캐시에 넣지 않는다.
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public PageCountCache(SqlStatementInspector sqlStatementInspector,
+                          @Value("${paging.count.cache-ttl:10s}") Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+        sqlStatementInspector.addListener(this);
+    }
+
+    public OptionalLong get(String table, String key) {
+        Map<String, Entry> byKey = counts.get(table);
+        Entry entry = byKey == null ? null : byKey.get(key);
+        if (entry == null) {
+            return OptionalLong.empty();
+        }
+        if (entry.expiresAt - System.nanoTime() < 0) {
+            byKey.remove(key, entry);
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(entry.count);
+    }
+
+    // 카운트 쿼리를 날리기 전에 받아 두었다가 put 할 때 같이 넘긴다.
+    public long generation(String table) {
+        return generationOf(table).get();
+    }
+
+    public void put(String table, String key, long count, long generation) {
+        if (generationOf(table).get() != generation) {
+            return;
+        }
+        counts.computeIfAbsent(table, t -> new ConcurrentHashMap<>())
+                .put(key, new Entry(count, System.nanoTime() + ttlNanos));
+    }
+
+    public void evict(String table) {
+        generationOf(table).incrementAndGet();
+        counts.remove(table);
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        String table = SqlStatements.writtenTable(sql);
+        if (table != null) {
+            evict(table);
+            TransactionCallbacks.afterCompletion(() -> evict(table));
+        }
+    }
+
+    private AtomicLong generationOf(String table) {
+        return generations.computeIfAbsent(table, t -> new AtomicLong());
+    }
+
+    private static class Entry {
+        private final long count;
+        private final long expiresAt;
+
+        private Entry(long count, long expiresAt) {
+            this.count = count;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
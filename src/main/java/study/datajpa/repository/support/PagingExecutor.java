@@ -0,0 +1,128 @@
+package study.datajpa.repository.support;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Locale;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+// Page 반환 메서드는 컨텐츠 쿼리를 날리고 나서 카운트 쿼리를 또 날린다. 테이블이 크면 카운트 쪽이 더 느린 경우가 많다.
+// 여기서는 카운트 쿼리를 다른 스레드(= 다른 커넥션, 다른 읽기 전용 트랜잭션)에서 컨텐츠 쿼리와 동시에 날린다.
+// 그러면 응답 시간이 둘의 합이 아니라 느린 쪽 하나에 맞춰진다.
+@Component
+public class PagingExecutor {
+
+    private final PageCountCache pageCountCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ThreadPoolTaskExecutor countExecutor;
+
+    public PagingExecutor(PageCountCache pageCountCache,
+                          JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${paging.count.concurrency:4}") int concurrency) {
+        this.pageCountCache = pageCountCache;
+        this.jdbcTemplate = jdbcTemplate;
+
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+
+        this.countExecutor = new ThreadPoolTaskExecutor();
+        this.countExecutor.setCorePoolSize(concurrency);
+        this.countExecutor.setMaxPoolSize(concurrency);
+        this.countExecutor.setThreadNamePrefix("page-count-");
+        // 방금 쓴 요청이면 카운트도 프라이머리에서 센다. (ReplicaStickiness)
+        this.countExecutor.setTaskDecorator(ReplicaStickiness::propagate);
+        this.countExecutor.initialize();
+    }
+
+    public <T> Page<T> page(Pageable pageable, Supplier<List<T>> contentQuery, CountQuery countQuery, TotalCountMode mode) {
+        switch (mode) {
+            case APPROXIMATE:
+                return approximate(pageable, contentQuery, countQuery);
+            case AGGREGATE:
+                OptionalLong aggregate = countQuery.getAggregate().get();
+                if (aggregate.isPresent()) {
+                    return new PageImpl<>(contentQuery.get(), pageable, aggregate.getAsLong());
+                }
+                return exact(pageable, contentQuery, countQuery);
+            case CACHED:
+                OptionalLong cached = pageCountCache.get(countQuery.getTable(), countQuery.getKey());
+                if (cached.isPresent()) {
+                    return new PageImpl<>(contentQuery.get(), pageable, cached.getAsLong());
+                }
+                return exact(pageable, contentQuery, countQuery);
+            default:
+                return exact(pageable, contentQuery, countQuery);
+        }
+    }
+
+    private <T> Page<T> exact(Pageable pageable, Supplier<List<T>> contentQuery, CountQuery countQuery) {
+        CompletableFuture<Long> total = countAsync(countQuery);
+        List<T> content = contentQuery.get();
+
+        // 첫 페이지인데 size보다 적게 나왔거나 마지막 페이지면 토탈은 컨텐츠만 보고 계산할 수 있다. 그 때는 카운트 결과를 안 쓴다.
+        Page<T> page = PageableExecutionUtils.getPage(content, pageable, () -> join(total));
+        total.cancel(false);
+        return page;
+    }
+
+    // 추정치는 테이블 전체 row 수라서 조건이 있는 카운트(findByAge 등)에 쓰면 틀린 값이 나간다. 그때는 EXACT로 센다.
+    private <T> Page<T> approximate(Pageable pageable, Supplier<List<T>> contentQuery, CountQuery countQuery) {
+        if (!countQuery.isUnfiltered()) {
+            return exact(pageable, contentQuery, countQuery);
+        }
+        Long estimate = jdbcTemplate.queryForObject(
+                "select row_count_estimate from information_schema.tables where table_name = ?",
+                Long.class, countQuery.getTable().toUpperCase(Locale.ROOT));
+        if (estimate == null) {
+            return exact(pageable, contentQuery, countQuery);
+        }
+        // PageImpl은 추정치가 실제 컨텐츠보다 작으면 offset + content 크기로 보정해 준다.
+        return new PageImpl<>(contentQuery.get(), pageable, estimate);
+    }
+
+    private CompletableFuture<Long> countAsync(CountQuery countQuery) {
+        long generation = pageCountCache.generation(countQuery.getTable());
+
+        // 쓰기 트랜잭션 안이면 아직 커밋 안 된 데이터가 있을 수 있다. 다른 커넥션에서는 안 보이기 때문에 그냥 같은 트랜잭션에서 센다.
+        if (TransactionCallbacks.inReadWriteTransaction()) {
+            return CompletableFuture.completedFuture(countQuery.count());
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            Long count = readOnlyTransaction.execute(status -> countQuery.count());
+            pageCountCache.put(countQuery.getTable(), countQuery.getKey(), count, generation);
+            return count;
+        }, countExecutor);
+    }
+
+    private static long join(CompletableFuture<Long> total) {
+        try {
+            return total.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        countExecutor.shutdown();
+    }
+}
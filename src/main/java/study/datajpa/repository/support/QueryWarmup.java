@@ -0,0 +1,229 @@
+package study.datajpa.repository.support;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.ResolvableType;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.core.RepositoryInformation;
+import org.springframework.data.repository.query.parser.PartTree;
+import org.springframework.data.repository.support.Repositories;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+// 배포 직후 첫 요청들이 느린 이유: 하이버네이트가 JPQL(@Query, 메서드 이름 쿼리, @NamedQuery)을 처음 쓸 때 파싱해서 쿼리 플랜 캐시에 올리고,
+// 엔티티 매핑 / 결과 변환 코드도 아직 JIT 컴파일 전이다.
+// 애플리케이션 러너는 readiness가 UP(ACCEPTING_TRAFFIC)이 되기 전에 돈다. 여기서 리포지토리 쿼리 메서드를 전부 한 번씩(iterations번) 불러 둔다.
+// 파라미터는 타입별 대표값("warmup", 0, 첫 페이지 1건 ...). 읽기 전용 트랜잭션에서 부르고 무조건 롤백한다.
+// @Modifying(벌크 연산), @Lock(락), 비동기(@Async, Future), deleteBy 메서드는 부르지 않는다.
+// 워밍업 호출은 실제 요청이 아니라서 메서드 지표(RepositoryMetricsAspect)에 안 남기고 조회 캐시(MemberQueryCache)에도 안 넣는다. (isRunning)
+@Slf4j
+@Component
+public class QueryWarmup implements ApplicationRunner {
+
+    private static final String WARMUP = "warmup";
+    private static final ThreadLocal<Boolean> RUNNING = new ThreadLocal<>();
+
+    private final ListableBeanFactory beanFactory;
+    private final Statistics statistics;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final int iterations;
+
+    private volatile Report lastReport;
+
+    public QueryWarmup(ListableBeanFactory beanFactory,
+                       EntityManagerFactory entityManagerFactory,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${warmup.enabled:true}") boolean enabled,
+                       @Value("${warmup.iterations:20}") int iterations) {
+        this.beanFactory = beanFactory;
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.iterations = iterations;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        long plansBefore = statistics.getQueryPlanCacheMissCount();
+        int warmed = 0;
+        int skipped = 0;
+        int failed = 0;
+
+        Repositories repositories = new Repositories(beanFactory);
+        for (Class<?> domainType : repositories) {
+            RepositoryInformation information = repositories.getRequiredRepositoryInformation(domainType);
+            Object repository = repositories.getRepositoryFor(domainType).orElse(null);
+            if (repository == null) {
+                continue;
+            }
+            for (Method method : information.getQueryMethods()) {
+                Object[] arguments = arguments(method);
+                if (arguments == null || !isSafe(method, domainType)) {
+                    skipped++;
+                    continue;
+                }
+                if (invoke(repository, method, arguments)) {
+                    warmed++;
+                } else {
+                    failed++;
+                }
+            }
+        }
+
+        // generate_statistics가 꺼져 있으면 0으로 나온다.
+        long plans = statistics.getQueryPlanCacheMissCount() - plansBefore;
+        lastReport = new Report(warmed, skipped, failed, plans, Duration.ofNanos(System.nanoTime() - start));
+        log.info("query warm-up: {} methods x {} in {} ms ({} skipped, {} failed), {} query plans compiled",
+                warmed, iterations, lastReport.elapsed.toMillis(), skipped, failed, plans);
+    }
+
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    // 지금 스레드가 워밍업 호출 중인지. 리포지토리 aspect들이 보고 건너뛴다.
+    public static boolean isRunning() {
+        return RUNNING.get() != null;
+    }
+
+    private boolean invoke(Object repository, Method method, Object[] arguments) {
+        RUNNING.set(Boolean.TRUE);
+        try {
+            for (int i = 0; i < iterations; i++) {
+                readOnlyTransaction.executeWithoutResult(status -> {
+                    status.setRollbackOnly();
+                    close(call(repository, method, arguments));
+                });
+            }
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("query warm-up failed: {}.{}", method.getDeclaringClass().getSimpleName(), method.getName(), e);
+            return false;
+        } finally {
+            RUNNING.remove();
+        }
+    }
+
+    private static Object call(Object repository, Method method, Object[] arguments) {
+        try {
+            return method.invoke(repository, arguments);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    // 스트림은 커서를 잡고 있어서 다 읽고 닫는다.
+    private static void close(Object result) {
+        if (result instanceof Stream) {
+            try (Stream<?> stream = (Stream<?>) result) {
+                stream.forEach(row -> {
+                });
+            }
+        }
+    }
+
+    private static boolean isSafe(Method method, Class<?> domainType) {
+        if (method.isAnnotationPresent(Modifying.class)
+                || method.isAnnotationPresent(Lock.class)
+                || method.isAnnotationPresent(Async.class)
+                || Future.class.isAssignableFrom(method.getReturnType())) {
+            return false;
+        }
+        try {
+            return !new PartTree(method.getName(), domainType).isDelete();
+        } catch (RuntimeException e) {
+            return true; // 메서드 이름 쿼리가 아니면 (@Query 등) 위 어노테이션으로만 판단한다.
+        }
+    }
+
+    // 대표값을 못 정하는 파라미터가 있으면 null. (엔티티 파라미터 등)
+    private static Object[] arguments(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        Object[] arguments = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            Class<?> type = types[i];
+            if (Collection.class.isAssignableFrom(type)) {
+                Class<?> element = ResolvableType.forMethodParameter(method, i).asCollection().resolveGeneric(0);
+                Object value = element == null ? null : sample(element);
+                if (value == null) {
+                    return null;
+                }
+                arguments[i] = Set.class.isAssignableFrom(type) ? Set.of(value) : List.of(value);
+            } else {
+                arguments[i] = sample(type);
+                if (arguments[i] == null) {
+                    return null;
+                }
+            }
+        }
+        return arguments;
+    }
+
+    private static Object sample(Class<?> type) {
+        if (type == String.class) {
+            return WARMUP;
+        }
+        if (type == int.class || type == Integer.class) {
+            return 0;
+        }
+        if (type == long.class || type == Long.class) {
+            return 0L;
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return false;
+        }
+        if (type == Pageable.class) {
+            return PageRequest.of(0, 1);
+        }
+        if (type == Sort.class) {
+            return Sort.unsorted();
+        }
+        if (type.isEnum() && type.getEnumConstants().length > 0) {
+            return type.getEnumConstants()[0];
+        }
+        return null;
+    }
+
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Report {
+        private final int warmed;
+        private final int skipped;
+        private final int failed;
+        private final long plansCompiled; // 쿼리 플랜 캐시 miss. 새로 파싱해서 캐시에 올린 JPQL 수.
+        private final Duration elapsed;
+    }
+}
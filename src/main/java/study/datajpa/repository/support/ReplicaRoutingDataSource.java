@@ -0,0 +1,39 @@
+package study.datajpa.repository.support;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+// 읽기 전용 트랜잭션(@Transactional(readOnly = true))은 레플리카로, 나머지는 프라이머리로 보낸다.
+// 트랜잭션이 readOnly인지는 커넥션을 얻는 시점에 정해져 있어야 한다. 그래서 LazyConnectionDataSourceProxy로 감싸서
+// 실제 커넥션은 첫 SQL을 날릴 때 얻게 한다. (ReplicaDataSourceConfig)
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Target {
+        PRIMARY, REPLICA
+    }
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(Target.PRIMARY, primary);
+        targets.put(Target.REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return currentTarget();
+    }
+
+    public static Target currentTarget() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !ReplicaStickiness.isSticky()) {
+            return Target.REPLICA;
+        }
+        return Target.PRIMARY;
+    }
+}
@@ -0,0 +1,97 @@
+package study.datajpa.repository.support;
+
+// 방금 쓴 쪽이 바로 다시 읽을 때는 레플리카 말고 프라이머리에서 읽게 한다. (read-your-writes)
+// 레플리카는 복제가 늦을 수 있어서 방금 쓴 데이터가 아직 안 보일 수 있다.
+// 지금 스레드(요청)에서 쓰기가 나갔거나(written), 같은 세션에서 얼마 전에 쓴 적이 있으면(stick) 프라이머리로 간다.
+//
+// 상태는 스레드에 붙어 있어서 누가 지워 줘야 한다.
+// - 웹 요청은 open으로 범위를 열고 요청이 끝날 때 clear로 지운다. (ReplicaDataSourceConfig의 인터셉터)
+// - 범위 밖(스케줄러, 리로더 같은 풀 스레드)은 쓰기 트랜잭션이 끝날 때 지운다. (ReplicaStickinessListener)
+// - 다른 스레드로 넘기는 작업은 propagate로 감싸면 넘기는 시점의 상태를 가지고 돌고, 끝나면 그 스레드의 원래 상태로 돌아간다.
+//   비동기 실행기들은 TaskDecorator로 이걸 건다.
+public final class ReplicaStickiness {
+
+    private enum State {
+        STICKY, WRITTEN
+    }
+
+    private static final ThreadLocal<State> STATE = new ThreadLocal<>();
+    // 범위 안이면 첫 쓰기 때 부를 콜백. 범위 밖이면 null.
+    private static final ThreadLocal<Runnable> SCOPE = new ThreadLocal<>();
+    private static final Runnable NO_CALLBACK = () -> {
+    };
+
+    private ReplicaStickiness() {
+    }
+
+    // onFirstWrite는 이 범위에서 처음 쓰기가 나갈 때 한 번 불린다. 웹 요청은 여기서 세션에 기록한다. (응답이 나가기 전이라서)
+    public static void open(Runnable onFirstWrite) {
+        SCOPE.set(onFirstWrite);
+    }
+
+    public static boolean isScoped() {
+        return SCOPE.get() != null;
+    }
+
+    public static void stick() {
+        if (STATE.get() == null) {
+            STATE.set(State.STICKY);
+        }
+    }
+
+    public static void markWritten() {
+        if (STATE.get() == State.WRITTEN) {
+            return;
+        }
+        STATE.set(State.WRITTEN);
+        Runnable onFirstWrite = SCOPE.get();
+        if (onFirstWrite != null) {
+            onFirstWrite.run();
+        }
+    }
+
+    public static boolean isSticky() {
+        return STATE.get() != null;
+    }
+
+    public static boolean isWritten() {
+        return STATE.get() == State.WRITTEN;
+    }
+
+    public static void clear() {
+        STATE.remove();
+        SCOPE.remove();
+    }
+
+    // TaskDecorator로도 쓴다. (ReplicaStickiness::propagate)
+    // 큐가 꽉 차서 호출한 스레드에서 그냥 실행되는 경우는 상태를 건드리지 않는다. 거기서 난 쓰기는 호출한 쪽 상태에 그대로 남아야 한다.
+    public static Runnable propagate(Runnable task) {
+        State captured = STATE.get();
+        Thread caller = Thread.currentThread();
+        return () -> {
+            if (Thread.currentThread() == caller) {
+                task.run();
+                return;
+            }
+            State previousState = STATE.get();
+            Runnable previousScope = SCOPE.get();
+            set(STATE, captured);
+            // 작업 하나가 범위다. 끝나면 아래에서 되돌리니까 트랜잭션 끝에 따로 지울 필요가 없다.
+            SCOPE.set(NO_CALLBACK);
+            try {
+                task.run();
+            } finally {
+                set(STATE, previousState);
+                set(SCOPE, previousScope);
+            }
+        };
+    }
+
+    private static <T> void set(ThreadLocal<T> threadLocal, T value) {
+        if (value == null) {
+            threadLocal.remove();
+        } else {
+            threadLocal.set(value);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package study.datajpa.repository.support;
+
+// 쓰기 SQL이 나가면 이 스레드(요청)의 남은 조회는 프라이머리에서 한다.
+// 요청 같은 범위 밖에서 난 쓰기면 지워 줄 사람이 없다. 그 트랜잭션이 끝날 때 지운다. 안 그러면 풀 스레드가 계속 프라이머리로만 읽는다.
+public class ReplicaStickinessListener implements SqlStatementListener {
+
+    public ReplicaStickinessListener(SqlStatementInspector sqlStatementInspector) {
+        sqlStatementInspector.addListener(this);
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        if (SqlStatements.writtenTable(sql) == null || ReplicaStickiness.isWritten()) {
+            return;
+        }
+        ReplicaStickiness.markWritten();
+        if (!ReplicaStickiness.isScoped()) {
+            TransactionCallbacks.afterCompletion(ReplicaStickiness::clear);
+        }
+    }
+}
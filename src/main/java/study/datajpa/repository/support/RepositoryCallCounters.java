@@ -0,0 +1,43 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+
+// 스레드별로 나간 SQL 수와 로딩된 엔티티 수를 센다. 리포지토리 메서드 앞뒤 값의 차이가 그 메서드가 쓴 양이다.
+// 하이버네이트 Statistics는 애플리케이션 전체 합계라서 동시에 도는 다른 요청 것까지 섞인다. 메서드별로 나누려면 스레드별로 세야 한다.
+@Component
+public class RepositoryCallCounters implements SqlStatementListener, PostLoadEventListener {
+
+    private static final int STATEMENTS = 0;
+    private static final int ENTITIES = 1;
+
+    // 배열 하나를 계속 재사용한다. 호출마다 객체를 만들지 않는다.
+    private final ThreadLocal<long[]> counters = ThreadLocal.withInitial(() -> new long[2]);
+
+    public RepositoryCallCounters(SqlStatementInspector sqlStatementInspector, EntityManagerFactory entityManagerFactory) {
+        sqlStatementInspector.addListener(this);
+        HibernateEventListeners.append(entityManagerFactory, EventType.POST_LOAD, this);
+    }
+
+    public long statements() {
+        return counters.get()[STATEMENTS];
+    }
+
+    public long entities() {
+        return counters.get()[ENTITIES];
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        counters.get()[STATEMENTS]++;
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        counters.get()[ENTITIES]++;
+    }
+}
@@ -0,0 +1,68 @@
+package study.datajpa.repository.support;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+
+// 리포지토리 비동기 메서드(@Async("repositoryExecutor"))를 돌리는 스레드 풀.
+// 스레드 하나가 쿼리 하나 동안 커넥션 하나를 쓰기 때문에 스레드 수를 커넥션 풀보다 작게 잡는다. 요청 스레드가 쓸 커넥션을 남겨 둔다.
+// 큐가 꽉 차면 호출한 스레드에서 그냥 실행한다. (기다리는 만큼 호출 쪽이 느려져서 자연스럽게 속도가 조절된다)
+//
+// 쓰기 트랜잭션 안에서 부르면 다른 스레드로 넘기지 않고 호출한 스레드에서 바로 실행한다.
+// 다른 스레드는 다른 커넥션이라 아직 커밋 안 된 데이터가 안 보이기 때문.
+// 넘길 때는 호출한 스레드의 레플리카 sticky 상태를 같이 넘긴다. 방금 쓴 요청의 비동기 조회도 프라이머리에서 읽는다.
+public class RepositoryExecutor implements AsyncTaskExecutor {
+
+    private final ThreadPoolTaskExecutor delegate = new ThreadPoolTaskExecutor();
+
+    public RepositoryExecutor(int threads, int queueCapacity) {
+        delegate.setCorePoolSize(threads);
+        delegate.setMaxPoolSize(threads);
+        delegate.setQueueCapacity(queueCapacity);
+        delegate.setThreadNamePrefix("repository-");
+        delegate.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        delegate.setTaskDecorator(ReplicaStickiness::propagate);
+        delegate.setWaitForTasksToCompleteOnShutdown(true);
+        delegate.initialize();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (TransactionCallbacks.inReadWriteTransaction()) {
+            task.run();
+            return;
+        }
+        delegate.execute(task);
+    }
+
+    @Override
+    public void execute(Runnable task, long startTimeout) {
+        execute(task);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        if (TransactionCallbacks.inReadWriteTransaction()) {
+            FutureTask<T> future = new FutureTask<>(task);
+            future.run();
+            return future;
+        }
+        return delegate.submit(task);
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+}
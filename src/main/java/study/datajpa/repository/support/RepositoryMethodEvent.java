@@ -0,0 +1,32 @@
+package study.datajpa.repository.support;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// 리포지토리 메서드 호출 하나를 JFR 이벤트로 남긴다. (repository.metrics.jfr-events)
+// JFR 녹화 중일 때만 기록된다. JDK Mission Control에서 스레드 / 락 / GC 이벤트와 같은 타임라인으로 볼 수 있다.
+@Name("study.datajpa.RepositoryMethod")
+@Label("Repository Method")
+@Category({"Data JPA", "Repository"})
+class RepositoryMethodEvent extends Event {
+
+    @Label("Repository")
+    String repository;
+
+    @Label("Method")
+    String method;
+
+    @Label("Statements")
+    long statements;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Entities Loaded")
+    long entities;
+
+    @Label("Success")
+    boolean success;
+}
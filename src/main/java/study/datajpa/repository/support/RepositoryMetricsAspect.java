@@ -0,0 +1,191 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// 리포지토리 메서드마다 걸린 시간, 나간 SQL 수, 반환한 row 수, 로딩된 엔티티 수를 마이크로미터로 남긴다.
+// /actuator/metrics/repository.method?tag=method:findByUsername 처럼 본다.
+// p6spy처럼 SQL 문자열을 만들거나 로그를 쓰지 않는다. 호출마다 하는 일은 카운터 차이 계산과 미터 기록뿐이라 운영에서 켜 둬도 된다.
+// 캐시 aspect(MemberQueryCacheAspect)보다 바깥에서 돌아야 캐시 hit도 같이 잰다.
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RepositoryMetricsAspect {
+
+    private final MeterRegistry meterRegistry;
+    private final RepositoryCallCounters counters;
+    private final boolean jfrEvents;
+
+    // 미터는 만들 때 태그 정렬 / 레지스트리 조회 비용이 있어서 (리포지토리, 메서드)별로 한 번만 만든다.
+    // findById 같은 상속 메서드는 Method가 같기 때문에 리포지토리 이름으로 한 번 더 나눈다.
+    private final Map<String, Map<Method, Meters>> meters = new ConcurrentHashMap<>();
+
+    public RepositoryMetricsAspect(MeterRegistry meterRegistry,
+                                   RepositoryCallCounters counters,
+                                   @Value("${repository.metrics.jfr-events:false}") boolean jfrEvents) {
+        this.meterRegistry = meterRegistry;
+        this.counters = counters;
+        this.jfrEvents = jfrEvents;
+    }
+
+    @Around("execution(* study.datajpa.repository.MemberRepository.*(..))")
+    public Object memberRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return measure(joinPoint, "MemberRepository");
+    }
+
+    @Around("execution(* study.datajpa.repository.MemberJpaRepository.*(..))")
+    public Object memberJpaRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return measure(joinPoint, "MemberJpaRepository");
+    }
+
+    @Around("execution(* study.datajpa.repository.TeamJpaRepository.*(..))")
+    public Object teamJpaRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return measure(joinPoint, "TeamJpaRepository");
+    }
+
+    private Object measure(ProceedingJoinPoint joinPoint, String repository) throws Throwable {
+        if (QueryWarmup.isRunning()) {
+            return joinPoint.proceed();
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Meters methodMeters = meters(repository, method);
+
+        RepositoryMethodEvent event = jfrEvents ? new RepositoryMethodEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long statementsBefore = counters.statements();
+        long entitiesBefore = counters.entities();
+        long start = System.nanoTime();
+
+        Object result = null;
+        boolean success = false;
+        try {
+            result = joinPoint.proceed();
+            success = true;
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            long statements = counters.statements() - statementsBefore;
+            long entities = counters.entities() - entitiesBefore;
+            long rows = rows(result);
+
+            (success ? methodMeters.success : methodMeters.error).record(elapsed, TimeUnit.NANOSECONDS);
+            methodMeters.statements.record(statements);
+            methodMeters.entities.record(entities);
+            if (success) {
+                methodMeters.rows.record(rows);
+            }
+
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.repository = methodMeters.repository;
+                    event.method = method.getName();
+                    event.statements = statements;
+                    event.rows = rows;
+                    event.entities = entities;
+                    event.success = success;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    private Meters meters(String repository, Method method) {
+        Map<Method, Meters> byMethod = meters.get(repository);
+        if (byMethod == null) {
+            byMethod = meters.computeIfAbsent(repository, r -> new ConcurrentHashMap<>());
+        }
+        Meters methodMeters = byMethod.get(method);
+        if (methodMeters == null) {
+            methodMeters = byMethod.computeIfAbsent(method, m -> register(repository, m));
+        }
+        return methodMeters;
+    }
+
+    private Meters register(String repository, Method method) {
+        String name = method.getName();
+        return new Meters(repository,
+                timer(repository, name, "success"),
+                timer(repository, name, "error"),
+                summary("repository.method.statements", "SQL statements per call", repository, name),
+                summary("repository.method.rows", "rows returned per call", repository, name),
+                summary("repository.method.entities", "entities loaded per call", repository, name));
+    }
+
+    // 히스토그램 버킷까지 내보내서 백엔드에서 p99 같은 백분위를 여러 인스턴스 합쳐서 계산할 수 있게 한다.
+    private Timer timer(String repository, String method, String outcome) {
+        return Timer.builder("repository.method")
+                .description("repository method latency")
+                .tag("repository", repository)
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary summary(String name, String description, String repository, String method) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .tag("repository", repository)
+                .tag("method", method)
+                .register(meterRegistry);
+    }
+
+    // 반환 값에서 row 수를 센다. 단건은 null이면 0, 아니면 1.
+    private static long rows(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        if (result instanceof Number || result instanceof Boolean) {
+            return 0; // count, exists, 벌크 연산 결과 같은 값
+        }
+        return 1;
+    }
+
+    private static final class Meters {
+        private final String repository;
+        private final Timer success;
+        private final Timer error;
+        private final DistributionSummary statements;
+        private final DistributionSummary rows;
+        private final DistributionSummary entities;
+
+        private Meters(String repository, Timer success, Timer error,
+                       DistributionSummary statements, DistributionSummary rows, DistributionSummary entities) {
+            this.repository = repository;
+            this.success = success;
+            this.error = error;
+            this.statements = statements;
+            this.rows = rows;
+            this.entities = entities;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package study.datajpa.repository.support;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// 컨트롤러 메서드(엔드포인트) 하나가 요청마다 쓸 수 있는 SQL 수. 없으면 sql.budget.default.
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SqlBudget {
+
+    int value();
+}
@@ -0,0 +1,9 @@
+package study.datajpa.repository.support;
+
+// sql.budget.fail-on-exceed가 켜져 있을 때 요청 하나에서 예산보다 많은 SQL이 나가면 그 다음 SQL 직전에 던진다.
+public class SqlBudgetExceededException extends RuntimeException {
+
+    public SqlBudgetExceededException(String name, int budget, int count) {
+        super(name + " executed " + count + " SQL statements (budget " + budget + ")");
+    }
+}
@@ -0,0 +1,115 @@
+package study.datajpa.repository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// 요청(또는 테스트) 하나 동안 나간 SQL을 센다. 시작은 begin(), 끝은 end(). 스레드별로 따로 센다.
+// 하이버네이트가 만든 SQL은 파라미터가 ?로 남아 있어서, 파라미터만 다른 같은 쿼리는 문자열이 똑같다.
+// 같은 SQL이 n-plus-one-threshold번 나가면 N+1로 보고 그 SQL을 부른 코드 위치를 로그로 남긴다.
+@Slf4j
+@Component
+public class SqlStatementCounter implements SqlStatementListener {
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private final int repeatThreshold;
+
+    public SqlStatementCounter(SqlStatementInspector sqlStatementInspector,
+                               @Value("${sql.n-plus-one-threshold:3}") int repeatThreshold) {
+        this.repeatThreshold = repeatThreshold;
+        sqlStatementInspector.addListener(this);
+    }
+
+    // budget 0 이하는 예산 없음.
+    public static Scope begin(String name, int budget, boolean failOnExceed) {
+        Scope scope = new Scope(name, budget, failOnExceed);
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    public static Scope current() {
+        return CURRENT.get();
+    }
+
+    public static Scope end() {
+        Scope scope = CURRENT.get();
+        CURRENT.remove();
+        return scope;
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        Scope scope = CURRENT.get();
+        if (scope == null) {
+            return;
+        }
+        int repeated = scope.record(sql);
+        if (repeated == repeatThreshold) {
+            log.warn("N+1 suspected in {}: same statement executed {} times\n  sql: {}\n  at: {}",
+                    scope.name, repeated, sql, callSite());
+        }
+        if (scope.failOnExceed && scope.budget > 0 && scope.count > scope.budget) {
+            throw new SqlBudgetExceededException(scope.name, scope.budget, scope.count);
+        }
+    }
+
+    // 애플리케이션 코드 프레임만 남긴다. 하이버네이트 / 스프링 / 이 패키지 프레임은 너무 길다.
+    private static String callSite() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .map(StackWalker.StackFrame::toStackTraceElement)
+                .filter(e -> e.getClassName().startsWith("study.datajpa.")
+                        && !e.getClassName().startsWith("study.datajpa.repository.support."))
+                .limit(10)
+                .map(StackTraceElement::toString)
+                .collect(Collectors.joining("\n      ")));
+    }
+
+    public static final class Scope {
+        private final String name;
+        private final int budget;
+        private final boolean failOnExceed;
+        private final List<String> statements = new ArrayList<>();
+        private final Map<String, Integer> repeats = new HashMap<>();
+        private int count;
+
+        private Scope(String name, int budget, boolean failOnExceed) {
+            this.name = name;
+            this.budget = budget;
+            this.failOnExceed = failOnExceed;
+        }
+
+        private int record(String sql) {
+            count++;
+            statements.add(sql);
+            return repeats.merge(sql, 1, Integer::sum);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getBudget() {
+            return budget;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public boolean isOverBudget() {
+            return budget > 0 && count > budget;
+        }
+
+        public List<String> getStatements() {
+            return Collections.unmodifiableList(statements);
+        }
+    }
+}
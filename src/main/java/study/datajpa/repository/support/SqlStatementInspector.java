@@ -0,0 +1,26 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// 하이버네이트가 실행하는 모든 SQL이 여기를 한 번 거쳐 간다. hibernate.session_factory.statement_inspector로 등록.
+// SQL은 바꾸지 않고 그대로 돌려주고, 등록된 리스너들에게 알려주기만 한다.
+// 리스너는 스스로 addListener로 붙는다. 빈 주입으로 받으면 EntityManagerFactory 생성 중에 순환 참조가 생길 수 있기 때문.
+public class SqlStatementInspector implements StatementInspector {
+
+    private final List<SqlStatementListener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(SqlStatementListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        for (SqlStatementListener listener : listeners) {
+            listener.onStatement(sql);
+        }
+        return sql;
+    }
+}
@@ -0,0 +1,8 @@
+package study.datajpa.repository.support;
+
+// 하이버네이트가 SQL을 준비할 때마다 호출된다. JPQL, 네이티브 쿼리, 벌크 연산, 엔티티 insert/update/delete 다 포함.
+// 호출 스레드에서 바로 불리기 때문에 여기서 무거운 일을 하면 안 된다.
+public interface SqlStatementListener {
+
+    void onStatement(String sql);
+}
@@ -0,0 +1,121 @@
+package study.datajpa.repository.support;
+
+import java.util.Locale;
+
+// 하이버네이트가 만든 SQL에서 필요한 정보만 가볍게 뽑아내는 유틸.
+// 모든 SQL마다 불리기 때문에 전체를 소문자로 바꾸거나 파싱하지 않고 앞부분만 본다.
+public final class SqlStatements {
+
+    private SqlStatements() {
+    }
+
+    // insert / update / delete / merge 대상 테이블 이름(소문자). 조회 쿼리면 null.
+    public static String writtenTable(String sql) {
+        int start = skipWhitespace(sql, 0);
+        if (startsWith(sql, start, "insert into ")) {
+            return tableAt(sql, start + "insert into ".length());
+        }
+        if (startsWith(sql, start, "update ")) {
+            return tableAt(sql, start + "update ".length());
+        }
+        if (startsWith(sql, start, "delete from ")) {
+            return tableAt(sql, start + "delete from ".length());
+        }
+        if (startsWith(sql, start, "merge into ")) {
+            return tableAt(sql, start + "merge into ".length());
+        }
+        return null;
+    }
+
+    // 하이버네이트가 엔티티 하나를 update / delete 할 때 만드는 SQL은 항상 "where {id 컬럼}=?" 이다. (@Version이 있으면 "and version=?"가 붙는다)
+    // 그 모양이 아닌 update / delete는 JPQL 벌크 연산이나 네이티브 쿼리로 본다. 이 경우에는 엔티티 이벤트가 안 나간다.
+    public static boolean isBulkWrite(String sql, String idColumn) {
+        int start = skipWhitespace(sql, 0);
+        if (!startsWith(sql, start, "update ") && !startsWith(sql, start, "delete from ")) {
+            return false;
+        }
+
+        int where = indexOfIgnoreCase(sql, " where ", start);
+        if (where < 0) {
+            return true;
+        }
+
+        int predicate = skipWhitespace(sql, where + " where ".length());
+        String byId = idColumn + "=?";
+        if (!startsWith(sql, predicate, byId)) {
+            return true;
+        }
+
+        int rest = skipWhitespace(sql, predicate + byId.length());
+        if (rest == sql.length()) {
+            return false;
+        }
+        // "and version=?" 하나만 더 붙은 건 엔티티 단건 update / delete.
+        return !(startsWith(sql, rest, "and ")
+                && sql.endsWith("=?")
+                && indexOfIgnoreCase(sql, " and ", rest + "and ".length()) < 0);
+    }
+
+    public static boolean isInsert(String sql) {
+        return startsWith(sql, skipWhitespace(sql, 0), "insert into ");
+    }
+
+    public static boolean isDelete(String sql) {
+        return startsWith(sql, skipWhitespace(sql, 0), "delete from ");
+    }
+
+    // update 문의 set 절에서 이 컬럼을 바꾸는지.
+    public static boolean assignsColumn(String sql, String column) {
+        int set = indexOfIgnoreCase(sql, " set ", 0);
+        if (set < 0) {
+            return false;
+        }
+        int where = indexOfIgnoreCase(sql, " where ", set);
+        int end = where < 0 ? sql.length() : where;
+
+        int i = set;
+        while ((i = indexOfIgnoreCase(sql, column, i + 1)) >= 0 && i < end) {
+            char before = sql.charAt(i - 1);
+            int after = skipWhitespace(sql, i + column.length());
+            boolean wordStart = before == ' ' || before == ',' || before == '.';
+            if (wordStart && after < sql.length() && sql.charAt(after) == '=') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOfIgnoreCase(String sql, String target, int from) {
+        for (int i = from; i <= sql.length() - target.length(); i++) {
+            if (sql.regionMatches(true, i, target, 0, target.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(String sql, int offset, String prefix) {
+        return sql.regionMatches(true, offset, prefix, 0, prefix.length());
+    }
+
+    private static String tableAt(String sql, int offset) {
+        int start = skipWhitespace(sql, offset);
+        int end = start;
+        while (end < sql.length()) {
+            char c = sql.charAt(end);
+            if (Character.isWhitespace(c) || c == '(') {
+                break;
+            }
+            end++;
+        }
+        return end > start ? sql.substring(start, end).toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static int skipWhitespace(String sql, int offset) {
+        int i = offset;
+        while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,61 @@
+package study.datajpa.repository.support;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 키(id)별 락. 키마다 락을 만들지 않고 해시로 나눈 stripes개의 락을 돌려 쓴다.
+// 여러 키를 한 번에 잡을 때는 항상 락 번호 순서대로 잡는다. 두 스레드가 서로 반대 순서로 잡다가 데드락 나는 걸 막는다.
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    public StripedLocks(int stripes) {
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public Held lockAll(Collection<?> keys) {
+        boolean[] needed = new boolean[locks.length];
+        for (Object key : keys) {
+            needed[stripe(key)] = true;
+        }
+
+        int[] held = new int[locks.length];
+        int count = 0;
+        try {
+            for (int i = 0; i < locks.length; i++) {
+                if (needed[i]) {
+                    locks[i].lock();
+                    held[count++] = i;
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            new Held(held, count).unlock();
+            throw e;
+        }
+        return new Held(held, count);
+    }
+
+    private int stripe(Object key) {
+        return (key.hashCode() & 0x7fffffff) % locks.length;
+    }
+
+    // 잡은 락. 잡은 스레드에서 풀어야 한다.
+    public final class Held {
+        private final int[] stripes;
+        private final int count;
+
+        private Held(int[] stripes, int count) {
+            this.stripes = stripes;
+            this.count = count;
+        }
+
+        public void unlock() {
+            for (int i = count - 1; i >= 0; i--) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.Cache;
+import org.springframework.stereotype.Component;
+import study.datajpa.entity.Team;
+
+import javax.persistence.EntityManagerFactory;
+
+// 2차 캐시의 Team.members(mappedBy 컬렉션)는 회원 쪽 FK로 정해진다.
+// 엔티티 변경은 auto_evict_collection_cache가 지우지만, 벌크 delete / 팀을 바꾸는 벌크 update(deleteAllInBatch, 네이티브 쿼리 등)는
+// 엔티티 이벤트가 안 나가서 어느 팀인지 모른다. 그때는 리전을 통째로 비운다. SQL이 나갈 때 한 번, 트랜잭션이 끝날 때 한 번 더.
+@Component
+public class TeamMembersCacheEvictor implements SqlStatementListener {
+
+    private static final String REGION = Team.class.getName() + ".members";
+
+    private final Cache cache;
+
+    public TeamMembersCacheEvictor(EntityManagerFactory entityManagerFactory, SqlStatementInspector sqlStatementInspector) {
+        this.cache = entityManagerFactory.getCache().unwrap(Cache.class);
+        sqlStatementInspector.addListener(this);
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        if ("member".equals(SqlStatements.writtenTable(sql))
+                && SqlStatements.isBulkWrite(sql, "member_id")
+                && (SqlStatements.isDelete(sql) || SqlStatements.assignsColumn(sql, "team_id"))) {
+            evictAll();
+        }
+    }
+
+    private void evictAll() {
+        cache.evictCollectionData(REGION);
+        TransactionCallbacks.afterCompletion(() -> cache.evictCollectionData(REGION));
+    }
+}
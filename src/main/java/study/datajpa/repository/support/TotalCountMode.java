@@ -0,0 +1,17 @@
+package study.datajpa.repository.support;
+
+// 페이징의 토탈 카운트를 어떻게 구할지.
+public enum TotalCountMode {
+
+    // 매번 카운트 쿼리를 날린다. 대신 컨텐츠 쿼리와 동시에 다른 커넥션에서 날린다.
+    EXACT,
+
+    // 조건별 카운트 결과를 짧은 시간 캐시한다. 해당 테이블에 쓰기가 일어나면 바로 지운다.
+    CACHED,
+
+    // 카운트 쿼리를 아예 안 날리고 DB 통계의 테이블 row 추정치를 쓴다. 조건이 없는 전체 카운트에만 쓰고, 조건이 있으면 EXACT.
+    APPROXIMATE,
+
+    // 커밋 후 이벤트로 유지하는 카운터(MemberAggregates)를 쓴다. 정확하고 쿼리가 없다. 카운터가 없는 조건이거나 쓰기 트랜잭션 안이면 EXACT.
+    AGGREGATE
+}
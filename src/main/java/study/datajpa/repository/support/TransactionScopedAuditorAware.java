@@ -0,0 +1,33 @@
+package study.datajpa.repository.support;
+
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+// 등록자 / 수정자를 트랜잭션마다 한 번만 구한다. 같은 트랜잭션에서 저장하는 엔티티는 전부 같은 값을 쓴다.
+// (세션이나 시큐리티 컨텍스트에서 꺼내는 일을 엔티티마다 하지 않는다)
+// 트랜잭션 밖이면 매번 delegate를 부른다.
+public class TransactionScopedAuditorAware<T> implements AuditorAware<T> {
+
+    private final AuditorAware<T> delegate;
+
+    public TransactionScopedAuditorAware(AuditorAware<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Optional<T> getCurrentAuditor() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return delegate.getCurrentAuditor();
+        }
+        Optional<T> auditor = (Optional<T>) TransactionSynchronizationManager.getResource(this);
+        if (auditor == null) {
+            auditor = delegate.getCurrentAuditor();
+            TransactionSynchronizationManager.bindResource(this, auditor);
+            TransactionCallbacks.afterCompletion(() -> TransactionSynchronizationManager.unbindResourceIfPossible(this));
+        }
+        return auditor;
+    }
+}
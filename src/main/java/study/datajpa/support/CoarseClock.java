@@ -0,0 +1,42 @@
+package study.datajpa.support;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 등록일 / 수정일에 쓰는 시계. LocalDateTime.now()를 엔티티마다 부르지 않고 백그라운드 스레드가 resolution마다 한 번 갱신해 둔 값을 읽는다.
+// 시간이 resolution만큼 늦을 수 있다. 감사 컬럼에는 그 정도 오차는 상관없다.
+// 엔티티 콜백(@PrePersist)에서도 써야 해서 static이고, 엔티티 / 리포지토리 어디에도 속하지 않게 이 패키지에 둔다.
+// start를 안 부르면(auditing.fast-path가 꺼져 있으면) 그냥 LocalDateTime.now().
+// 스프링 빈이 아니다. 한 번 시작하면 JVM이 끝날 때까지 돈다(데몬 스레드). 컨텍스트가 여러 번 뜨고 내려가도(테스트) 값이 비지 않는다.
+public final class CoarseClock {
+
+    private static final AtomicBoolean started = new AtomicBoolean();
+    private static volatile LocalDateTime cached;
+
+    private CoarseClock() {
+    }
+
+    // 처음 부른 resolution으로 한 번만 시작한다. 그 다음부터는 아무것도 안 한다.
+    public static void start(Duration resolution) {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "coarse-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cached = LocalDateTime.now();
+        long periodNanos = resolution.toNanos();
+        ticker.scheduleAtFixedRate(() -> cached = LocalDateTime.now(), periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static LocalDateTime now() {
+        LocalDateTime now = cached;
+        return now != null ? now : LocalDateTime.now();
+    }
+}
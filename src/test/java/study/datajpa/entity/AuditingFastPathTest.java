@@ -0,0 +1,98 @@
+package study.datajpa.entity;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.auditing.DateTimeProvider;
+import org.springframework.transaction.annotation.Transactional;
+import study.datajpa.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAccessor;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+
+// auditing.fast-path=true (AuditingInterceptor). 시계는 StubClock으로 바꿔서 시간을 직접 정한다.
+@Transactional
+@SpringBootTest(properties = "auditing.fast-path=true")
+class AuditingFastPathTest {
+
+    private static final LocalDateTime T1 = LocalDateTime.of(2021, 8, 1, 10, 0);
+    private static final LocalDateTime T2 = LocalDateTime.of(2021, 8, 1, 11, 0);
+
+    @PersistenceContext
+    EntityManager em;
+
+    @Autowired MemberRepository memberRepository;
+    @Autowired StubClock clock;
+
+    @Test
+    public void auditingFastPath() {
+        //given
+        clock.now = T1;
+        Member member = new Member("member1");
+        memberRepository.save(member); // AuditingInterceptor.onSave
+        em.flush();
+        assertThat(member.getCreatedDate()).isEqualTo(T1);
+        assertThat(member.getLastModifiedDate()).isEqualTo(T1);
+
+        //when
+        clock.now = T2;
+        member.setUsername("member2");
+        em.flush(); // AuditingInterceptor.onFlushDirty
+        em.clear();
+
+        //then
+        Member findMember = memberRepository.findById(member.getId()).get();
+        assertThat(findMember.getCreatedDate()).isEqualTo(T1);
+        assertThat(findMember.getLastModifiedDate()).isEqualTo(T2);
+    }
+
+    @Test
+    public void oneClockReadPerFlush() {
+        //given
+        clock.now = T1;
+        Member member1 = memberRepository.save(new Member("member1"));
+        Member member2 = memberRepository.save(new Member("member2"));
+        em.flush();
+
+        //when
+        clock.now = T2;
+        clock.reads = 0;
+        member1.setAge(10);
+        member2.setAge(20);
+        em.flush();
+
+        //then
+        assertThat(clock.reads).isEqualTo(1);
+        assertThat(member1.getLastModifiedDate()).isEqualTo(T2);
+        assertThat(member2.getLastModifiedDate()).isEqualTo(T2);
+    }
+
+    @TestConfiguration
+    static class StubClockConfig {
+
+        @Bean
+        @Primary
+        StubClock stubClock() {
+            return new StubClock();
+        }
+    }
+
+    static class StubClock implements DateTimeProvider {
+        private volatile LocalDateTime now = T1;
+        private volatile int reads;
+
+        @Override
+        public Optional<TemporalAccessor> getNow() {
+            reads++;
+            return Optional.of(now);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.support.IndexAdvisor;
+
+import static org.assertj.core.api.Assertions.*;
+
+// 기본은 경고만 남긴다. 거절하는 쪽을 보려고 켜고 띄운다.
+@SpringBootTest(properties = "sql.index-advisor.reject-unindexed-sort=true")
+class IndexAdvisorTest {
+
+    @Autowired IndexAdvisor indexAdvisor;
+
+    @Test
+    public void suggestIndexForUnindexedFilter() {
+        // age에는 인덱스가 없다. findSlicedByAge, countByAge, bulkAgePlus 등이 모두 age 인덱스 하나로 묶인다.
+        assertThat(indexAdvisor.getSuggestions())
+                .filteredOn(suggestion -> suggestion.getTable().equals("member"))
+                .anySatisfy(suggestion -> {
+                    assertThat(suggestion.getColumns()).containsExactly("age");
+                    assertThat(suggestion.getMethods()).contains("MemberRepository.findSlicedByAge", "MemberRepository.countByAge");
+                    assertThat(suggestion.ddl()).isEqualTo("create index idx_member_age on member (age);");
+                });
+
+        // username은 (username, member_id) 인덱스가 있다.
+        assertThat(indexAdvisor.getSuggestions())
+                .noneSatisfy(suggestion -> assertThat(suggestion.getColumns()).startsWith("username"));
+    }
+
+    @Test
+    public void rejectUnindexedSort() {
+        assertThat(indexAdvisor.getSortableProperties(Member.class)).contains("id", "username").doesNotContain("age");
+
+        indexAdvisor.checkSort(Member.class, Sort.by("username").descending());
+        assertThatThrownBy(() -> indexAdvisor.checkSort(Member.class, Sort.by("age")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
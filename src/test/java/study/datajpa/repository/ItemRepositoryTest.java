@@ -3,14 +3,24 @@ package study.datajpa.repository;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.annotation.Transactional;
 import study.datajpa.entity.Item;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 class ItemRepositoryTest {
 
     @Autowired ItemRepository itemRepository;
+    @PersistenceContext
+    EntityManager em;
 
     // debug 찍어서 debug 모드로 돌려보기
     // id가 null이라서 새로운 엔티티라고 판단. primitive type의 경우는 0으로 판단.
@@ -21,4 +31,39 @@ class ItemRepositoryTest {
         // merge를 하면 있을거라 생각하고 일단 가져오고 없으면 넣는다. 비효율적.
     }
 
-}
\ No newline at end of file
+    @Test
+    @Transactional
+    public void insertAll() {
+        //given
+        // save()가 커밋한 "A"가 남아 있을 수 있어서 이 테스트만 쓰는 id로 넣고 늘어난 수를 본다.
+        long before = itemRepository.count();
+
+        //when
+        // select 없이 insert만 배치로 나간다.
+        int inserted = itemRepository.insertAll(Arrays.asList(new Item("insertAll-A"), new Item("insertAll-B"), new Item("insertAll-C")));
+
+        //then
+        assertEquals(3, inserted);
+        assertEquals(before + 3, itemRepository.count());
+        assertThrows(DuplicateKeyException.class, () -> itemRepository.insertAll(Collections.singletonList(new Item("insertAll-A"))));
+    }
+
+    @Test
+    @Transactional
+    public void upsertAll() {
+        //given
+        long before = itemRepository.count();
+        itemRepository.upsertAll(Arrays.asList(new Item("upsertAll-A"), new Item("upsertAll-B")));
+        LocalDateTime createdDate = itemRepository.findById("upsertAll-A").get().getCreatedDate();
+
+        //when
+        // A는 이미 있어서 그대로, C만 새로 들어간다.
+        itemRepository.upsertAll(Arrays.asList(new Item("upsertAll-A"), new Item("upsertAll-C")));
+        em.clear();
+
+        //then
+        assertEquals(before + 3, itemRepository.count());
+        assertEquals(createdDate, itemRepository.findById("upsertAll-A").get().getCreatedDate());
+    }
+
+}
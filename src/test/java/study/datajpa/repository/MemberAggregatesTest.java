@@ -0,0 +1,136 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+import study.datajpa.repository.support.MemberAggregates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+// 커밋 후 이벤트로 세기 때문에 @Transactional 없이 커밋한다.
+// 나이는 다른 테스트가 안 쓰는 값을 쓴다. 그 나이의 회원은 이 테스트가 만든 것뿐이다.
+@SpringBootTest
+class MemberAggregatesTest {
+
+    private static final int AGE = 700_001;
+    // bulkAgePlus는 이 나이 이상을 전부 옮긴다. 다른 테스트가 쓰는 어떤 나이보다도 크게 잡는다.
+    private static final int BULK_AGE = 1_000_000_000;
+
+    @Autowired MemberAggregates memberAggregates;
+    @Autowired MemberRepository memberRepository;
+    @Autowired TeamRepository teamRepository;
+    @Autowired TransactionTemplate transactionTemplate;
+
+    private final List<Long> memberIds = new ArrayList<>();
+    private final List<Long> teamIds = new ArrayList<>();
+
+    @AfterEach
+    public void cleanUp() {
+        // 하나씩 지워서 커밋 후 이벤트로 카운터에서도 빠지게 한다.
+        transactionTemplate.executeWithoutResult(status -> {
+            memberRepository.findAllById(memberIds).forEach(memberRepository::delete);
+            teamRepository.findAllById(teamIds).forEach(teamRepository::delete);
+        });
+    }
+
+    @Test
+    public void followsCommittedChanges() {
+        //given
+        Team teamA = team("teamA");
+        Team teamB = team("teamB");
+        Member member1 = member(new Member("member1", AGE, teamA));
+        member(new Member("member2", AGE, teamA));
+        member(new Member("member3", AGE + 1));
+        reconciled();
+
+        //when
+        // 나이와 팀을 바꾸면 바뀌기 전 칸에서 빼고 바뀐 칸에 더한다.
+        transactionTemplate.executeWithoutResult(status -> {
+            Member member = memberRepository.findById(member1.getId()).get();
+            member.setAge(AGE + 1);
+            member.changeTeam(teamB);
+        });
+        // 롤백된 변경은 안 센다.
+        transactionTemplate.executeWithoutResult(status -> {
+            memberRepository.save(new Member("rolledBack", AGE));
+            status.setRollbackOnly();
+        });
+
+        //then
+        assertThat(memberAggregates.memberCountByAge(AGE)).hasValue(1);
+        assertThat(memberAggregates.memberCountByAge(AGE + 1)).hasValue(2);
+        assertThat(memberAggregates.memberCountByTeam(teamA.getId())).hasValue(1);
+        assertThat(memberAggregates.memberCountByTeam(teamB.getId())).hasValue(1);
+        assertThat(memberAggregates.memberCountByAge(AGE)).hasValue(memberRepository.countByAge(AGE));
+        assertThat(memberAggregates.memberCount()).hasValue(memberRepository.count());
+        assertThat(memberAggregates.reconcile()).hasValue(0); // 이벤트로 센 값이 DB와 같다.
+    }
+
+    @Test
+    public void bulkUpdateIsNotServedStale() {
+        //given
+        member(new Member("member1", BULK_AGE));
+        member(new Member("member2", BULK_AGE + 1));
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> memberRepository.bulkAgePlus(BULK_AGE));
+
+        //then
+        // 다시 세기를 기다리지 않는다. 백그라운드에서 다시 세기가 끝나기 전에는 empty라서 카운트 쿼리로 간다. 옮기기 전 값은 안 나온다.
+        assertThat(memberAggregates.memberCountByAge(BULK_AGE)).satisfiesAnyOf(
+                count -> assertThat(count).isEmpty(),
+                count -> assertThat(count).hasValue(0));
+        assertThat(memberAggregates.memberCountByAge(BULK_AGE + 2)).satisfiesAnyOf(
+                count -> assertThat(count).isEmpty(),
+                count -> assertThat(count).hasValue(1));
+        assertThat(memberRepository.countByAge(BULK_AGE)).isZero();
+        assertThat(memberRepository.countByAge(BULK_AGE + 1)).isEqualTo(1);
+        assertThat(memberRepository.countByAge(BULK_AGE + 2)).isEqualTo(1);
+    }
+
+    @Test
+    public void writeTransactionCountsWithQuery() {
+        //given
+        reconciled();
+
+        //when
+        // 쓰기 트랜잭션 안에서는 커밋 전 변경이 카운터에 없다. empty를 줘서 카운트 쿼리를 날리게 한다.
+        OptionalLong inside = transactionTemplate.execute(status -> {
+            memberRepository.save(new Member("member1", AGE));
+            status.setRollbackOnly();
+            return memberAggregates.memberCountByAge(AGE);
+        });
+
+        //then
+        assertThat(inside).isEmpty();
+        assertThat(memberAggregates.memberCountByAge(AGE)).hasValue(0);
+    }
+
+    // 앞 테스트의 벌크 연산 때문에 백그라운드에서 다시 세는 중일 수 있다. 카운터를 쓸 수 있을 때까지 맞춘다.
+    private void reconciled() {
+        for (int i = 0; i < 10 && !memberAggregates.memberCount().isPresent(); i++) {
+            memberAggregates.reconcile();
+        }
+        assertThat(memberAggregates.memberCount()).isPresent();
+    }
+
+    private Member member(Member member) {
+        Member saved = memberRepository.save(member);
+        memberIds.add(saved.getId());
+        return saved;
+    }
+
+    private Team team(String name) {
+        Team saved = teamRepository.save(new Team(name));
+        teamIds.add(saved.getId());
+        return saved;
+    }
+}
@@ -0,0 +1,103 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.dto.MemberDto;
+import study.datajpa.dto.MemberImport;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.support.AsyncQueries;
+import study.datajpa.repository.support.MemberBatchLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+// 로더는 다른 스레드에서 조회하기 때문에 커밋된 데이터만 보인다. @Transactional 없이 커밋한다.
+@SpringBootTest
+class MemberBatchLoaderTest {
+
+    @Autowired MemberBatchLoader memberBatchLoader;
+    @Autowired MemberRepository memberRepository;
+    @Autowired TransactionTemplate transactionTemplate;
+
+    private final List<Long> ids = new ArrayList<>();
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAllById(ids);
+    }
+
+    @Test
+    public void coalesceConcurrentLoads() {
+        //given
+        List<String> names = IntStream.range(0, 10)
+                .mapToObj(i -> "loader" + i)
+                .collect(Collectors.toList());
+        memberRepository.importAll(names.stream().map(name -> new MemberImport(name, 10, null)));
+        memberRepository.findByNames(names).forEach(member -> ids.add(member.getId()));
+
+        long requestsBefore = memberBatchLoader.getRequests();
+        long batchesBefore = memberBatchLoader.getBatches();
+
+        //when
+        // 10명을 10번씩 한꺼번에 찾는다.
+        List<CompletableFuture<Optional<Member>>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(memberBatchLoader.loadAsync(ids.get(i % ids.size())));
+        }
+        List<Optional<Member>> results = AsyncQueries.joinAll(futures);
+
+        //then
+        assertThat(results).allMatch(Optional::isPresent);
+        assertThat(results.get(3).get().getId()).isEqualTo(ids.get(3));
+        assertThat(memberBatchLoader.getRequests() - requestsBefore).isEqualTo(100);
+        // 100번 찾았지만 window 하나 안에 다 들어와서 쿼리는 한두 번.
+        assertThat(memberBatchLoader.getBatches() - batchesBefore).isLessThan(10);
+    }
+
+    @Test
+    public void readWriteTransactionLoadsInline() {
+        //given
+        Long id = memberRepository.save(new Member("member1", 10)).getId();
+        ids.add(id);
+        long requestsBefore = memberBatchLoader.getRequests();
+
+        //when
+        // 쓰기 트랜잭션 안에서는 모으지 않고 이 트랜잭션에서 바로 찾는다. 커밋 안 된 변경이 보이고, 이 영속성 컨텍스트의 엔티티가 다른 요청으로 안 넘어간다.
+        boolean sameInstance = transactionTemplate.execute(status -> {
+            Member member = memberRepository.findById(id).get();
+            member.setAge(20);
+            Member loaded = memberBatchLoader.loadAsync(id).join().get();
+            status.setRollbackOnly();
+            return loaded == member && loaded.getAge() == 20;
+        });
+
+        //then
+        assertThat(sameInstance).isTrue();
+        assertThat(memberBatchLoader.getRequests()).isEqualTo(requestsBefore);
+    }
+
+    @Test
+    public void loadDto() {
+        //given
+        Long id = memberRepository.save(new Member("member1", 10)).getId();
+        ids.add(id);
+
+        //when
+        // 엔티티와 따로 모은다. 없는 id는 empty.
+        Optional<MemberDto> found = memberBatchLoader.loadDto(id);
+        Optional<MemberDto> missing = memberBatchLoader.loadDto(-1L);
+
+        //then
+        assertThat(found).hasValueSatisfying(dto -> assertThat(dto.getUsername()).isEqualTo("member1"));
+        assertThat(missing).isEmpty();
+    }
+}
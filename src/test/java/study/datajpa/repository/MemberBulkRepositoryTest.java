@@ -0,0 +1,108 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import study.datajpa.dto.MemberImport;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.support.BulkProgress;
+import study.datajpa.repository.support.BulkUpdateEngine;
+import study.datajpa.repository.support.BulkUpdateException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+// 청크마다 커밋하기 때문에 @Transactional 없이 돌린다.
+// 나이는 다른 테스트가 안 쓰는 값에서 시작한다. 벌크 연산이 이 테스트가 만든 회원만 바꾼다.
+@SpringBootTest
+class MemberBulkRepositoryTest {
+
+    private static final int CHUNKS_AGE = 600_000_000;
+    private static final int RESUME_AGE = 500_000_000;
+
+    @Autowired MemberBulkRepository memberBulkRepository;
+    @Autowired MemberRepository memberRepository;
+    @Autowired BulkUpdateEngine bulkUpdateEngine;
+
+    private final List<String> names = new ArrayList<>();
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAll(memberRepository.findByNames(names));
+    }
+
+    @Test
+    public void bulkAgePlusInChunks() {
+        //given
+        importMembers("bulk", CHUNKS_AGE);
+        List<BulkProgress> progress = new ArrayList<>();
+
+        //when
+        BulkProgress result = memberBulkRepository.bulkAgePlus(CHUNKS_AGE + 50, false, 10, 2, progress::add);
+
+        //then
+        assertThat(result.isFinished()).isTrue();
+        assertThat(result.getUpdatedRows()).isEqualTo(50);
+        assertThat(progress).hasSize(result.getTotalChunks());
+        Map<String, Integer> ages = ages();
+        assertThat(ages.get("bulk49")).isEqualTo(CHUNKS_AGE + 49);
+        assertThat(ages.get("bulk50")).isEqualTo(CHUNKS_AGE + 51);
+        assertThat(ages.get("bulk99")).isEqualTo(CHUNKS_AGE + 100);
+    }
+
+    @Test
+    public void resumeAfterFailure() {
+        //given
+        List<Long> ids = importMembers("resume", RESUME_AGE);
+        Long minId = ids.stream().min(Long::compare).get();
+        Long maxId = ids.stream().max(Long::compare).get();
+        long failAt = (minId + maxId) / 2;
+
+        // 중간 청크에서 실패.
+        BulkUpdateException failure = catchThrowableOfType(() -> bulkUpdateEngine.run("test.resume", false, minId, maxId, 10, 1,
+                (fromId, toId) -> {
+                    if (fromId <= failAt && failAt < toId) {
+                        throw new IllegalStateException("boom");
+                    }
+                    return memberRepository.bulkAgePlusInRange(RESUME_AGE, fromId, toId);
+                }, null), BulkUpdateException.class);
+        assertThat(failure).isNotNull();
+        long updatedBeforeFailure = failure.getProgress().getUpdatedRows();
+
+        // resume 없이 다시 돌리면 남은 기록을 안 보고 거절한다.
+        assertThatThrownBy(() -> bulkUpdateEngine.run("test.resume", false, minId, maxId, 10, 1,
+                (fromId, toId) -> memberRepository.bulkAgePlusInRange(RESUME_AGE, fromId, toId), null))
+                .isInstanceOf(IllegalStateException.class);
+
+        //when
+        BulkProgress result = bulkUpdateEngine.run("test.resume", true, minId, maxId, 10, 1,
+                (fromId, toId) -> memberRepository.bulkAgePlusInRange(RESUME_AGE, fromId, toId), null);
+
+        //then
+        // 이미 끝난 청크는 건너뛰고 나머지만 바꾼다. 모든 회원이 딱 한 번씩만 바뀐다.
+        assertThat(result.getSkippedChunks()).isEqualTo(failure.getProgress().getCompletedChunks());
+        assertThat(updatedBeforeFailure + result.getUpdatedRows()).isEqualTo(100);
+        ages().forEach((name, age) -> assertThat(age).as(name).isEqualTo(RESUME_AGE + Integer.parseInt(name.substring("resume".length())) + 1));
+    }
+
+    // prefix0 ~ prefix99, 나이는 age ~ age + 99. 만든 회원 id를 돌려준다.
+    private List<Long> importMembers(String prefix, int age) {
+        IntStream.range(0, 100).forEach(i -> names.add(prefix + i));
+        memberRepository.importAll(IntStream.range(0, 100)
+                .mapToObj(i -> new MemberImport(prefix + i, age + i, null)));
+        return memberRepository.findByNames(names).stream()
+                .map(Member::getId)
+                .collect(Collectors.toList());
+    }
+
+    private Map<String, Integer> ages() {
+        return memberRepository.findByNames(names).stream()
+                .collect(Collectors.toMap(Member::getUsername, Member::getAge));
+    }
+}
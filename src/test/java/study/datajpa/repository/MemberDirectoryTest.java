@@ -0,0 +1,93 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+import study.datajpa.repository.support.MemberDirectory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+// 커밋 후 이벤트로 고치기 때문에 @Transactional 없이 커밋한다.
+@SpringBootTest
+class MemberDirectoryTest {
+
+    // bulkAgePlus가 이 테스트 회원만 옮기도록 다른 테스트가 안 쓰는 나이를 쓴다.
+    private static final int BULK_AGE = 800_000_000;
+
+    @Autowired MemberDirectory memberDirectory;
+    @Autowired MemberRepository memberRepository;
+    @Autowired TeamRepository teamRepository;
+    @Autowired TransactionTemplate transactionTemplate;
+
+    private final List<Long> memberIds = new ArrayList<>();
+    private Long teamId;
+
+    // 테스트 중에 이미 지운 회원은 건너뛴다.
+    @AfterEach
+    public void cleanUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            memberRepository.findAllById(memberIds).forEach(memberRepository::delete);
+            if (teamId != null) {
+                teamRepository.deleteById(teamId);
+            }
+        });
+    }
+
+    @Test
+    public void followsCommittedChanges() {
+        //given
+        Team team = teamRepository.save(new Team("teamA"));
+        teamId = team.getId();
+        Long id = memberRepository.save(new Member("directory1", 10, team)).getId();
+        memberIds.add(id);
+        assertThat(memberDirectory.isLoaded()).isTrue();
+        assertThat(memberDirectory.find("directory1")).hasValueSatisfying(entry -> {
+            assertThat(entry.getId()).isEqualTo(id);
+            assertThat(entry.getAge()).isEqualTo(10);
+            assertThat(entry.getTeamId()).isEqualTo(team.getId());
+        });
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> {
+            Member member = memberRepository.findById(id).get();
+            member.setUsername("directory2");
+            member.setAge(20);
+        });
+
+        //then
+        assertThat(memberDirectory.find("directory1")).isEmpty();
+        assertThat(memberDirectory.find("directory2")).hasValueSatisfying(entry -> assertThat(entry.getAge()).isEqualTo(20));
+
+        // 롤백된 변경은 안 들어온다.
+        transactionTemplate.executeWithoutResult(status -> {
+            memberRepository.deleteById(id);
+            status.setRollbackOnly();
+        });
+        assertThat(memberDirectory.find("directory2")).isPresent();
+
+        memberRepository.deleteById(id);
+        assertThat(memberDirectory.find("directory2")).isEmpty();
+    }
+
+    @Test
+    public void bulkUpdateIsNotServedStale() {
+        //given
+        memberIds.add(memberRepository.save(new Member("directoryBulk", BULK_AGE)).getId());
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> memberRepository.bulkAgePlus(BULK_AGE));
+
+        //then
+        // 다시 읽기를 기다리지 않는다. 다 읽기 전에는 못 쓰는 상태라서 옮기기 전 나이가 나오지 않는다.
+        assertThat(memberDirectory.find("directoryBulk")).satisfiesAnyOf(
+                entry -> assertThat(entry).isEmpty(),
+                entry -> assertThat(entry).hasValueSatisfying(found -> assertThat(found.getAge()).isEqualTo(BULK_AGE + 1)));
+    }
+}
@@ -119,6 +119,28 @@ class MemberJpaRepositoryTest {
 
     }
 
+    @Test
+    public void pagingByCursor() {
+        //given
+        memberJpaRepository.save(new Member("member1", 10));
+        memberJpaRepository.save(new Member("member2", 10));
+        memberJpaRepository.save(new Member("member3", 10));
+        memberJpaRepository.save(new Member("member4", 10));
+        memberJpaRepository.save(new Member("member5", 10));
+
+        int age = 10;
+        int limit = 3;
+
+        //when
+        List<Member> first = memberJpaRepository.findByPage(age, 0, limit);
+        Member last = first.get(first.size() - 1);
+        List<Member> next = memberJpaRepository.findByPageAfter(age, last.getUsername(), last.getId(), limit);
+
+        //then
+        assertThat(first).extracting("username").containsExactly("member5", "member4", "member3");
+        assertThat(next).extracting("username").containsExactly("member2", "member1");
+    }
+
     @Test
     public void bulkUpdate() {
         //given
@@ -0,0 +1,80 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.dto.MemberDto;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+import study.datajpa.repository.support.MemberBatchLoader;
+import study.datajpa.repository.support.MemberNearCache;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static study.datajpa.support.SqlCountAssertions.*;
+
+// 캐시는 커밋된 데이터만 들고 있기 때문에 @Transactional 없이 커밋한다.
+@SpringBootTest
+class MemberNearCacheTest {
+
+    @Autowired MemberNearCache memberNearCache;
+    @Autowired MemberBatchLoader memberBatchLoader;
+    @Autowired MemberRepository memberRepository;
+    @Autowired TeamRepository teamRepository;
+    @Autowired TransactionTemplate transactionTemplate;
+
+    private Long memberId;
+    private Long teamId;
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteById(memberId);
+        teamRepository.deleteById(teamId);
+    }
+
+    @Test
+    public void hotIdSkipsDatabase() {
+        //given
+        Team team = teamRepository.save(new Team("teamA"));
+        teamId = team.getId();
+        Long id = memberRepository.save(new Member("member1", 10, team)).getId();
+        memberId = id;
+        // 컨트롤러처럼 못 찾으면 MemberBatchLoader의 DTO 조회로 채운다. 준영속 엔티티가 아니라서 팀 이름도 들어 있다.
+        memberNearCache.get(id, memberBatchLoader::loadDto);
+
+        //when
+        resetSqlCount();
+        Optional<MemberDto> result = memberNearCache.get(id, memberBatchLoader::loadDto);
+
+        //then
+        assertSqlCount(0);
+        assertThat(result).hasValueSatisfying(dto -> {
+            assertThat(dto.getUsername()).isEqualTo("member1");
+            assertThat(dto.getTeamName()).isEqualTo("teamA");
+        });
+    }
+
+    @Test
+    public void evictOnUpdateAndTeamRename() {
+        //given
+        Team team = teamRepository.save(new Team("teamA"));
+        teamId = team.getId();
+        Long id = memberRepository.save(new Member("member1", 10, team)).getId();
+        memberId = id;
+        memberNearCache.get(id, memberRepository::findDtoById);
+
+        //when
+        // 엔티티 수정은 하이버네이트 PostUpdate 이벤트로 그 id만, 팀 수정은 SQL을 보고 전부 지운다.
+        transactionTemplate.executeWithoutResult(status -> memberRepository.findById(id).get().setUsername("member2"));
+        MemberDto renamed = memberNearCache.get(id, memberRepository::findDtoById).get();
+        transactionTemplate.executeWithoutResult(status -> teamRepository.findById(team.getId()).get().setName("teamB"));
+        MemberDto moved = memberNearCache.get(id, memberRepository::findDtoById).get();
+
+        //then
+        assertThat(renamed.getUsername()).isEqualTo("member2");
+        assertThat(moved.getTeamName()).isEqualTo("teamB");
+    }
+}
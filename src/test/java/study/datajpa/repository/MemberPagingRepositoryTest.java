@@ -0,0 +1,102 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.support.PageCountCache;
+import study.datajpa.repository.support.TotalCountMode;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import static org.assertj.core.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+class MemberPagingRepositoryTest {
+
+    @Autowired MemberPagingRepository memberPagingRepository;
+    @Autowired MemberRepository memberRepository;
+    @Autowired PageCountCache pageCountCache;
+    @Autowired TransactionTemplate transactionTemplate;
+    @PersistenceContext
+    EntityManager em;
+
+    @Test
+    public void findByAge() {
+        //given
+        memberRepository.save(new Member("member1", 10));
+        memberRepository.save(new Member("member2", 10));
+        memberRepository.save(new Member("member3", 10));
+        memberRepository.save(new Member("member4", 10));
+        memberRepository.save(new Member("member5", 20));
+
+        PageRequest pageRequest = PageRequest.of(0, 3, Sort.Direction.DESC, "username");
+
+        //when
+        // 쓰기 트랜잭션 안이라서 카운트는 같은 트랜잭션에서 센다. 아직 커밋 안 된 데이터도 세어야 하기 때문.
+        Page<Member> page = memberPagingRepository.findByAge(10, pageRequest, TotalCountMode.EXACT);
+
+        //then
+        assertThat(page.getContent()).extracting("username").containsExactly("member4", "member3", "member2");
+        assertThat(page.getTotalElements()).isEqualTo(4);
+        assertThat(page.getTotalPages()).isEqualTo(2);
+        assertThat(page.hasNext()).isTrue();
+    }
+
+    @Test
+    public void countCacheEvictedOnWrite() {
+        //given
+        long generation = pageCountCache.generation("member");
+        pageCountCache.put("member", "all", 100, generation);
+        assertThat(pageCountCache.get("member", "all")).hasValue(100);
+
+        //when
+        // insert 쿼리가 나가는 순간 member 테이블 카운트는 전부 버려진다.
+        memberRepository.save(new Member("member1", 10));
+        em.flush();
+
+        //then
+        assertThat(pageCountCache.get("member", "all")).isEmpty();
+    }
+
+    @Test
+    public void approximateFallsBackToExactWithCondition() {
+        //given
+        memberRepository.save(new Member("member1", 77));
+        memberRepository.save(new Member("member2", 77));
+        memberRepository.save(new Member("member3", 78));
+
+        //when
+        // 테이블 row 추정치는 나이 조건과 상관없는 값이라 조건이 있으면 쓰지 않는다.
+        Page<Member> page = memberPagingRepository.findByAge(77, PageRequest.of(0, 1), TotalCountMode.APPROXIMATE);
+
+        //then
+        assertThat(page.getTotalElements()).isEqualTo(2);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void countCachedBeforeCommitIsEvictedAfterCompletion() {
+        //when
+        transactionTemplate.executeWithoutResult(status -> {
+            memberRepository.save(new Member("member1", 10));
+            em.flush();
+            // insert 다음, 커밋 전에 다른 커넥션에서 센 카운트는 아직 insert가 안 보이는 옛날 값이다.
+            long generation = pageCountCache.generation("member");
+            pageCountCache.put("member", "all", 100, generation);
+            assertThat(pageCountCache.get("member", "all")).hasValue(100);
+            status.setRollbackOnly();
+        });
+
+        //then
+        assertThat(pageCountCache.get("member", "all")).isEmpty();
+    }
+}
@@ -0,0 +1,64 @@
+package study.datajpa.repository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+// 캐시는 커밋된 데이터만 들고 있기 때문에 @Transactional 없이 커밋한다.
+@SpringBootTest
+class MemberQueryCacheTest {
+
+    @Autowired MemberRepository memberRepository;
+    @Autowired EntityManagerFactory entityManagerFactory;
+    @Autowired TransactionTemplate transactionTemplate;
+
+    private Long memberId;
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteById(memberId);
+    }
+
+    @Test
+    public void repeatLookupSkipsJdbc() {
+        //given
+        memberId = memberRepository.save(new Member("cached1", 10)).getId();
+        memberRepository.findByUsername("cached1");
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long before = statistics.getPrepareStatementCount();
+
+        //when
+        List<Member> result = memberRepository.findByUsername("cached1");
+
+        //then
+        assertThat(result).extracting("username").containsExactly("cached1");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(before);
+    }
+
+    @Test
+    public void evictedOnUsernameChange() {
+        //given
+        memberId = memberRepository.save(new Member("cached1", 10)).getId();
+        assertThat(memberRepository.findOptionalByUsername("cached1")).isPresent();
+        assertThat(memberRepository.findOptionalByUsername("cached2")).isEmpty();
+
+        //when
+        transactionTemplate.executeWithoutResult(status ->
+                memberRepository.findById(memberId).get().setUsername("cached2"));
+
+        //then
+        assertThat(memberRepository.findOptionalByUsername("cached1")).isEmpty();
+        assertThat(memberRepository.findOptionalByUsername("cached2")).isPresent();
+    }
+}
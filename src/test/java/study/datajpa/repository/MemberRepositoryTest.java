@@ -1,6 +1,9 @@
 package study.datajpa.repository;
 
 import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -8,16 +11,23 @@ import org.springframework.data.domain.*;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.transaction.annotation.Transactional;
 import study.datajpa.dto.MemberDto;
+import study.datajpa.dto.MemberImport;
 import study.datajpa.entity.Member;
 import study.datajpa.entity.Team;
+import study.datajpa.repository.support.AsyncQueries;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.*;
+import static study.datajpa.support.SqlCountAssertions.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
@@ -310,6 +320,29 @@ class MemberRepositoryTest {
     }
 
 
+    @Test
+    public void cursorPaging() {
+        //given
+        memberRepository.save(new Member("member1", 10));
+        memberRepository.save(new Member("member2", 10));
+        memberRepository.save(new Member("member3", 10));
+        memberRepository.save(new Member("member4", 10));
+        memberRepository.save(new Member("member5", 10));
+
+        // 커서 페이징은 항상 0페이지로 개수만 넘긴다.
+        PageRequest pageRequest = PageRequest.of(0, 2);
+
+        //when
+        List<Member> first = memberRepository.findFirstPage(pageRequest);
+        Member last = first.get(first.size() - 1);
+        // 마지막으로 본 (username, id)를 커서로 넘겨서 다음 페이지를 가져온다. offset이 없다.
+        List<Member> second = memberRepository.findNextPage(last.getUsername(), last.getId(), pageRequest);
+
+        //then
+        assertThat(first).extracting("username").containsExactly("member5", "member4");
+        assertThat(second).extracting("username").containsExactly("member3", "member2");
+    }
+
     @Test
     public void bulkUpdate() {
         //given
@@ -338,6 +371,8 @@ class MemberRepositoryTest {
         //then
         // 20살 이상 다 나이 +1됨.
         assertThat(resultCount).isEqualTo(3);
+        // update versioned라서 version도 올라간다. 낙관적 락으로 먼저 읽어 둔 쪽은 커밋할 때 충돌이 난다.
+        assertThat(member5.getVersion()).isEqualTo(1L);
 
     }
 
@@ -360,6 +395,7 @@ class MemberRepositoryTest {
         em.clear();
 
         //when
+        resetSqlCount();
         // select Member --> N + 1  문제 발생.
 //        List<Member> members = memberRepository.findAll();
         // fetch join으로 한방에 다 긁어오기. 해결. 가짜 프록시 객체가 아닌 진짜 객체가 들어가게 된다.
@@ -382,6 +418,30 @@ class MemberRepositoryTest {
             System.out.println("member.team = " + member.getTeam().getName());
         }
 
+        // entity graph로 팀까지 한 번에 가져왔기 때문에 getName()에서 쿼리가 더 안 나간다.
+        assertSqlCount(1);
+    }
+
+    @Test
+    public void teamSecondLevelCache() {
+        //given
+        Team teamA = new Team("teamA");
+        teamRepository.save(teamA);
+        em.flush();
+        em.clear();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        CacheRegionStatistics teamRegion = statistics.getDomainDataRegionStatistics(Team.class.getName());
+        long hitBefore = teamRegion.getHitCount();
+
+        //when
+        teamRepository.findById(teamA.getId()).get(); // 2차 캐시에 없어서 DB에서 가져오고 캐시에 넣는다.
+        em.clear(); // 1차 캐시를 비워도
+        Team findTeam = teamRepository.findById(teamA.getId()).get(); // 2차 캐시에서 꺼낸다. select가 안 나간다.
+
+        //then
+        assertThat(findTeam.getName()).isEqualTo("teamA");
+        assertThat(teamRegion.getHitCount()).isEqualTo(hitBefore + 1);
     }
 
     @Test
@@ -492,6 +552,31 @@ class MemberRepositoryTest {
 
     }
 
+    @Test
+    public void importAll() {
+        //given
+        // 팀은 이름으로만 넘긴다. 처음 나온 이름이면 팀을 새로 만든다.
+        Stream<MemberImport> rows = IntStream.range(0, 250)
+                .mapToObj(i -> new MemberImport("import" + i, i % 50, i % 2 == 0 ? "teamA" : "teamB"));
+        Member outer = memberRepository.save(new Member("outer", 10));
+        long membersBefore = memberRepository.count();
+        long teamsBefore = teamRepository.count();
+
+        //when
+        // 100개씩 배치로 insert 되고 그때마다 그 배치에서 등록한 회원만 영속성 컨텍스트에서 떨어진다.
+        long imported = memberRepository.importAll(rows);
+
+        //then
+        assertThat(imported).isEqualTo(250);
+        assertThat(em.contains(outer)).isTrue(); // 바깥 트랜잭션에서 등록한 엔티티는 그대로 영속 상태.
+        assertThat(memberRepository.count()).isEqualTo(membersBefore + 250);
+        assertThat(teamRepository.count()).isLessThanOrEqualTo(teamsBefore + 2); // 같은 이름의 팀이 이미 있으면 그 팀을 쓴다.
+
+        Member member = memberRepository.findByUsername("import3").get(0);
+        assertThat(member.getAge()).isEqualTo(3);
+        assertThat(member.getTeam().getName()).isEqualTo("teamB");
+    }
+
     @Test
     public void nativeQuery() {
         //given
@@ -515,4 +600,75 @@ class MemberRepositoryTest {
         }
     }
 
+    @Test
+    public void memberDtoTeamNameBatchFetch() {
+        //given
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 20; i++) {
+            em.persist(new Member("member" + i, i, i % 2 == 0 ? teamA : teamB));
+        }
+        em.flush();
+        em.clear();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        long before = statistics.getPrepareStatementCount();
+
+        //when
+        List<MemberDto> dtos = memberRepository.findListBy(PageRequest.of(0, 20)).stream()
+                .map(MemberDto::new)
+                .collect(Collectors.toList());
+
+        //then
+        // 회원 조회 1번 + 팀 in 쿼리 1번. 페이지 크기와 상관없다.
+        assertThat(dtos).extracting("teamName").containsOnly("teamA", "teamB");
+        assertThat(statistics.getPrepareStatementCount() - before).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void teamMembersSubselectFetch() {
+        //given
+        for (int t = 0; t < 5; t++) {
+            Team team = new Team("team" + t);
+            em.persist(team);
+            em.persist(new Member("member" + t, t, team));
+        }
+        em.flush();
+        em.clear();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        long before = statistics.getPrepareStatementCount();
+
+        //when
+        List<Team> teams = teamRepository.findAll();
+        int memberCount = teams.stream().mapToInt(team -> team.getMembers().size()).sum();
+
+        //then
+        // 팀 조회 1번 + 멤버 서브쿼리 1번.
+        assertThat(memberCount).isEqualTo(5);
+        assertThat(statistics.getPrepareStatementCount() - before).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void asyncQueries() {
+        //given
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 10, teamA));
+        em.persist(new Member("member3", 20, teamA));
+
+        //when
+        // 쓰기 트랜잭션 안이라서 다른 스레드로 안 넘어가고 이 스레드에서 바로 실행된다. (아직 커밋 안 된 회원도 보여야 하기 때문)
+        CompletableFuture<List<Member>> byUsername = memberRepository.findAsyncByUsername("member1");
+        CompletableFuture<Long> countByAge = memberRepository.countAsyncByAge(10);
+        CompletableFuture<Long> total = memberRepository.countAsync();
+
+        //then
+        assertThat(AsyncQueries.join(byUsername)).extracting("username").containsExactly("member1");
+        assertThat(AsyncQueries.join(countByAge, total, (age, all) -> age + "/" + all)).isEqualTo("2/3");
+    }
+
 }
\ No newline at end of file
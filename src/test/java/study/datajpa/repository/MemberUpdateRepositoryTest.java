@@ -0,0 +1,60 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.annotation.Transactional;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.support.OptimisticLockRetryTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+class MemberUpdateRepositoryTest {
+
+    @Autowired MemberRepository memberRepository;
+    @Autowired OptimisticLockRetryTemplate optimisticLockRetryTemplate;
+    @PersistenceContext
+    EntityManager em;
+
+    @Test
+    public void versionIncrementsOnUpdate() {
+        //given
+        Member member = memberRepository.save(new Member("member1", 10));
+        em.flush();
+        Long version = member.getVersion();
+
+        //when
+        member.setAge(11);
+        em.flush();
+
+        //then
+        assertThat(member.getVersion()).isEqualTo(version + 1);
+    }
+
+    @Test
+    public void retryOnConflict() {
+        //given
+        AtomicInteger calls = new AtomicInteger();
+        long conflicts = optimisticLockRetryTemplate.stats().getConflicts();
+
+        //when
+        // 두 번 충돌하고 세 번째에 성공.
+        int result = optimisticLockRetryTemplate.execute(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new OptimisticLockingFailureException("conflict");
+            }
+            return calls.get();
+        });
+
+        //then
+        assertThat(result).isEqualTo(3);
+        assertThat(optimisticLockRetryTemplate.stats().getConflicts()).isEqualTo(conflicts + 2);
+    }
+}
@@ -0,0 +1,50 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import study.datajpa.repository.support.NativeQueryValidator;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+// strict로 띄운다. 네이티브 쿼리 실행 계획에 문제가 있으면 컨텍스트가 안 떠서 이 테스트가 실패한다.
+@SpringBootTest(properties = "sql.explain.strict=true")
+class NativeQueryValidatorTest {
+
+    @Autowired NativeQueryValidator nativeQueryValidator;
+    @Autowired DataSource dataSource;
+
+    @Test
+    public void nativeQueriesPass() {
+        assertThat(nativeQueryValidator.getFindings()).isEmpty();
+    }
+
+    @Test
+    public void detectCartesianJoin() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            // on 절이 빠진 예전 findByNativeProjection.
+            List<NativeQueryValidator.Finding> findings = nativeQueryValidator.check(connection, "cartesian",
+                    "select m.member_id as id, m.username, t.name as teamName from member m left join team t", true);
+
+            assertThat(findings).extracting(NativeQueryValidator.Finding::getProblem)
+                    .containsExactly(NativeQueryValidator.Problem.CARTESIAN);
+        }
+    }
+
+    @Test
+    public void detectFullScanAndUnboundedScan() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            // age에는 인덱스가 없다.
+            assertThat(nativeQueryValidator.check(connection, "fullScan", "select * from member where age = ?", false))
+                    .extracting(NativeQueryValidator.Finding::getProblem)
+                    .containsExactly(NativeQueryValidator.Problem.FULL_SCAN);
+            assertThat(nativeQueryValidator.check(connection, "unbounded", "select * from member", false))
+                    .extracting(NativeQueryValidator.Finding::getProblem)
+                    .containsExactly(NativeQueryValidator.Problem.UNBOUNDED_SCAN);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.Test;
+import study.datajpa.repository.support.OffHeapMemberIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+
+// 스프링 없이 인덱스 자료구조만 본다.
+class OffHeapMemberIndexTest {
+
+    @Test
+    public void putFindRemove() {
+        //given
+        // 처음 크기보다 훨씬 많이 넣어서 몇 번 다시 만들게 한다.
+        OffHeapMemberIndex index = new OffHeapMemberIndex(16);
+        for (int i = 1; i <= 100_000; i++) {
+            index.put(i, "member" + i, i % 100, i % 10);
+        }
+
+        //when
+        index.remove(7, "member7");
+        index.remove(8, null); // username을 모르면 id로 찾아서 지운다.
+        index.remove(9, "member9");
+        index.put(9, "renamed", 30, 0); // username 변경
+
+        //then
+        OffHeapMemberIndex.Entry entry = new OffHeapMemberIndex.Entry();
+        assertThat(index.size()).isEqualTo(99_998);
+        assertThat(index.find("member12345", entry)).isTrue();
+        assertThat(entry.getId()).isEqualTo(12345);
+        assertThat(entry.getAge()).isEqualTo(45);
+        assertThat(entry.getTeamId()).isEqualTo(5);
+        assertThat(index.find("member7", entry)).isFalse();
+        assertThat(index.find("member8", entry)).isFalse();
+        assertThat(index.find("member9", entry)).isFalse();
+        assertThat(index.find("renamed", entry)).isTrue();
+        assertThat(entry.hasTeam()).isFalse();
+    }
+
+    @Test
+    public void readersNeverSeeTornEntries() throws Exception {
+        //given
+        OffHeapMemberIndex index = new OffHeapMemberIndex(16);
+        index.put(1, "hot", 0, 0);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        // 읽는 쪽은 나이와 팀 id가 항상 같이 바뀐 값(age == teamId)만 봐야 한다.
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            Thread reader = new Thread(() -> {
+                OffHeapMemberIndex.Entry entry = new OffHeapMemberIndex.Entry();
+                while (running.get()) {
+                    if (!index.find("hot", entry)) {
+                        failure.set("hot disappeared");
+                    } else if (entry.getAge() != entry.getTeamId() || entry.getId() != 1) {
+                        failure.set("torn read: " + entry.getAge() + " / " + entry.getTeamId());
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        //when
+        // 값을 바꾸면서 다른 키를 계속 넣어서 다시 만들기(rebuild)도 같이 일어나게 한다.
+        for (int i = 1; i <= 50_000; i++) {
+            index.put(1, "hot", i, i);
+            index.put(i + 1, "other" + i, 0, 0);
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        //then
+        assertThat(failure.get()).isNull();
+    }
+}
@@ -0,0 +1,38 @@
+package study.datajpa.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import study.datajpa.repository.support.MemberQueryCache;
+import study.datajpa.repository.support.QueryWarmup;
+
+import static org.assertj.core.api.Assertions.*;
+
+// 테스트 설정에서는 워밍업이 꺼져 있다. 이 테스트만 켜고 띄운다.
+@SpringBootTest(properties = "warmup.enabled=true")
+class QueryWarmupTest {
+
+    @Autowired QueryWarmup queryWarmup;
+    @Autowired MeterRegistry meterRegistry;
+    @Autowired MemberQueryCache memberQueryCache;
+
+    @Test
+    public void warmupRunsBeforeReady() {
+        // @SpringBootTest도 애플리케이션 러너를 실행한다. 컨텍스트가 떴으면 워밍업은 이미 끝나 있다.
+        QueryWarmup.Report report = queryWarmup.getLastReport();
+
+        assertThat(report).isNotNull();
+        assertThat(report.getWarmed()).isGreaterThan(0);
+        assertThat(report.getFailed()).isZero();
+        assertThat(report.getSkipped()).isGreaterThan(0); // bulkAgePlus(@Modifying), findLockByUsername(@Lock), 비동기 메서드 등.
+        assertThat(report.getPlansCompiled()).isGreaterThan(0);
+    }
+
+    @Test
+    public void warmupLeavesNoTrace() {
+        // 워밍업 호출은 메서드 지표에 안 남고, "warmup" username 조회 결과도 캐시에 안 들어간다.
+        assertThat(meterRegistry.find("repository.method").tag("method", "findByUsername").timer()).isNull();
+        assertThat(memberQueryCache.get(memberQueryCache.key("MemberRepository.findByUsername", new Object[]{"warmup"}))).isNull();
+    }
+}
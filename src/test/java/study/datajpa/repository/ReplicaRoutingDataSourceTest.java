@@ -0,0 +1,146 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.repository.support.ReplicaRoutingDataSource;
+import study.datajpa.repository.support.ReplicaStickiness;
+import study.datajpa.repository.support.ReplicaStickinessListener;
+import study.datajpa.repository.support.RepositoryExecutor;
+import study.datajpa.repository.support.SqlStatementInspector;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+// 스프링 컨텍스트 없이 H2 메모리 DB 두 개로 라우팅만 본다. 각 DB에 자기 이름을 넣어 두고 어디서 읽었는지 확인한다.
+class ReplicaRoutingDataSourceTest {
+
+    DataSource primary = database("primary");
+    DataSource replica = database("replica");
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate transactionTemplate;
+    TransactionTemplate readOnlyTransaction;
+    ReplicaStickinessListener listener = new ReplicaStickinessListener(new SqlStatementInspector());
+    RepositoryExecutor executor = new RepositoryExecutor(1, 10);
+
+    @BeforeEach
+    public void setUp() {
+        DataSource dataSource = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replica));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnlyTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ReplicaStickiness.clear();
+        executor.shutdown();
+    }
+
+    @Test
+    public void readOnlyGoesToReplica() {
+        transactionTemplate.setReadOnly(true);
+        assertThat(transactionTemplate.execute(status -> whereAmI())).isEqualTo("replica");
+    }
+
+    @Test
+    public void readWriteGoesToPrimary() {
+        assertThat(transactionTemplate.execute(status -> whereAmI())).isEqualTo("primary");
+    }
+
+    @Test
+    public void stickyReadsFromPrimary() {
+        //given
+        ReplicaStickiness.markWritten();
+        transactionTemplate.setReadOnly(true);
+
+        //when
+        String target = transactionTemplate.execute(status -> whereAmI());
+
+        //then
+        // 방금 쓴 요청이라 읽기 전용이어도 프라이머리에서 읽는다.
+        assertThat(target).isEqualTo("primary");
+    }
+
+    @Test
+    public void writeOutsideRequestIsClearedAfterTransaction() {
+        //when
+        Boolean writtenInTransaction = transactionTemplate.execute(status -> {
+            listener.onStatement("insert into marker values ('x')");
+            return ReplicaStickiness.isWritten();
+        });
+
+        //then
+        // 요청 밖(풀 스레드 등)이면 트랜잭션이 끝날 때 지운다. 다음 읽기 전용 트랜잭션은 다시 레플리카로 간다.
+        assertThat(writtenInTransaction).isTrue();
+        assertThat(ReplicaStickiness.isSticky()).isFalse();
+        assertThat(readOnlyTransaction.execute(status -> whereAmI())).isEqualTo("replica");
+    }
+
+    @Test
+    public void writeInsideRequestStaysUntilCleared() {
+        //given
+        AtomicInteger firstWrites = new AtomicInteger();
+        ReplicaStickiness.open(firstWrites::incrementAndGet);
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> {
+            listener.onStatement("insert into marker values ('x')");
+            listener.onStatement("update marker set name = 'y'");
+        });
+
+        //then
+        // 요청 범위 안이면 요청이 끝날 때까지 유지되고, 첫 쓰기 콜백(세션 기록)은 한 번만 불린다.
+        assertThat(firstWrites.get()).isEqualTo(1);
+        assertThat(readOnlyTransaction.execute(status -> whereAmI())).isEqualTo("primary");
+    }
+
+    @Test
+    public void repositoryExecutorPropagatesStickiness() throws Exception {
+        //given
+        ReplicaStickiness.open(() -> {
+        });
+        ReplicaStickiness.markWritten();
+
+        //when
+        String stickyRead = executor.submit(() -> readOnlyTransaction.execute(status -> whereAmI())).get();
+        ReplicaStickiness.clear();
+        String nextRead = executor.submit(() -> readOnlyTransaction.execute(status -> whereAmI())).get();
+
+        //then
+        // 방금 쓴 요청의 비동기 조회는 프라이머리에서 읽고, 작업이 끝나면 풀 스레드에는 상태가 남지 않는다. (스레드 하나짜리 풀)
+        assertThat(stickyRead).isEqualTo("primary");
+        assertThat(nextRead).isEqualTo("replica");
+    }
+
+    @Test
+    public void writeOnPoolThreadDoesNotLeak() throws Exception {
+        //when
+        executor.submit(() -> listener.onStatement("insert into marker values ('x')")).get();
+        Boolean stickyOnPoolThread = executor.submit(ReplicaStickiness::isSticky).get();
+
+        //then
+        assertThat(stickyOnPoolThread).isFalse();
+    }
+
+    private String whereAmI() {
+        return jdbcTemplate.queryForObject("select name from marker", String.class);
+    }
+
+    private static DataSource database(String name) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table if not exists marker (name varchar(20))");
+        jdbcTemplate.update("delete from marker");
+        jdbcTemplate.update("insert into marker values (?)", name);
+        return dataSource;
+    }
+}
@@ -0,0 +1,61 @@
+package study.datajpa.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.datajpa.entity.Member;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+class RepositoryMetricsTest {
+
+    @Autowired MemberJpaRepository memberJpaRepository;
+    @Autowired MeterRegistry meterRegistry;
+    @PersistenceContext
+    EntityManager em;
+
+    @Test
+    public void recordsPerMethodMetrics() {
+        //given
+        memberJpaRepository.save(new Member("member1", 10));
+        memberJpaRepository.save(new Member("member2", 20));
+        em.flush();
+        em.clear();
+        // 레지스트리는 같은 컨텍스트를 쓰는 테스트끼리 공유되고, 다른 테스트가 커밋한 회원도 있을 수 있다. 호출 전후 차이만 본다.
+        long callsBefore = timer().map(Timer::count).orElse(0L);
+        double rowsBefore = summary("repository.method.rows").map(DistributionSummary::totalAmount).orElse(0.0);
+        double statementsBefore = summary("repository.method.statements").map(DistributionSummary::totalAmount).orElse(0.0);
+
+        //when
+        List<Member> result = memberJpaRepository.findAll();
+
+        //then
+        assertThat(result).extracting("username").contains("member1", "member2");
+        assertThat(timer().get().count() - callsBefore).isEqualTo(1);
+        assertThat(summary("repository.method.rows").get().totalAmount() - rowsBefore).isEqualTo(result.size());
+        assertThat(summary("repository.method.statements").get().totalAmount() - statementsBefore).isEqualTo(1);
+    }
+
+    private Optional<Timer> timer() {
+        return Optional.ofNullable(meterRegistry.find("repository.method")
+                .tag("repository", "MemberJpaRepository").tag("method", "findAll").tag("outcome", "success")
+                .timer());
+    }
+
+    private Optional<DistributionSummary> summary(String name) {
+        return Optional.ofNullable(meterRegistry.find(name)
+                .tag("repository", "MemberJpaRepository").tag("method", "findAll")
+                .summary());
+    }
+}
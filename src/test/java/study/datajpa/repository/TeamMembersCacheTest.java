@@ -0,0 +1,86 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+
+// 2차 캐시(Team.members)는 커밋된 다음 다른 세션에서 읽을 때 쓰인다. 트랜잭션마다 새 영속성 컨텍스트에서 읽는다.
+@SpringBootTest
+class TeamMembersCacheTest {
+
+    @Autowired TeamRepository teamRepository;
+    @Autowired MemberRepository memberRepository;
+    @Autowired TransactionTemplate transactionTemplate;
+
+    private final List<Long> teamIds = new ArrayList<>();
+    private Long memberId;
+
+    // bulkDeleteEvictsCollection은 회원을 이미 지웠다. 회원을 먼저 지워야 팀 FK에 안 걸린다.
+    @AfterEach
+    public void cleanUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            memberRepository.findById(memberId).ifPresent(memberRepository::delete);
+            teamRepository.deleteAllById(teamIds);
+        });
+    }
+
+    @Test
+    public void moveMemberBetweenTeams() {
+        //given
+        Team teamA = team("teamA");
+        Team teamB = team("teamB");
+        Member member = member(new Member("member1", 10, teamA));
+        assertThat(memberIds(teamA)).containsExactly(member.getId()); // 여기서 캐시에 올라간다.
+        assertThat(memberIds(teamB)).isEmpty();
+
+        //when
+        // changeTeam이 아니라 FK만 바꾼다. 팀 쪽 컬렉션은 안 건드린다.
+        transactionTemplate.executeWithoutResult(status -> memberRepository.findById(member.getId()).get().setTeam(teamB));
+
+        //then
+        assertThat(memberIds(teamA)).isEmpty();
+        assertThat(memberIds(teamB)).containsExactly(member.getId());
+    }
+
+    @Test
+    public void bulkDeleteEvictsCollection() {
+        //given
+        Team team = team("teamA");
+        Member member = member(new Member("member1", 10, team));
+        assertThat(memberIds(team)).containsExactly(member.getId());
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> memberRepository.deleteAllByIdInBatch(List.of(member.getId())));
+
+        //then
+        assertThat(memberIds(team)).isEmpty();
+    }
+
+    private Team team(String name) {
+        Team team = teamRepository.save(new Team(name));
+        teamIds.add(team.getId());
+        return team;
+    }
+
+    private Member member(Member member) {
+        Member saved = memberRepository.save(member);
+        memberId = saved.getId();
+        return saved;
+    }
+
+    private List<Long> memberIds(Team team) {
+        return transactionTemplate.execute(status -> teamRepository.findById(team.getId()).get().getMembers().stream()
+                .map(Member::getId)
+                .collect(Collectors.toList()));
+    }
+}
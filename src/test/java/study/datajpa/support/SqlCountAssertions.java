@@ -0,0 +1,30 @@
+package study.datajpa.support;
+
+import study.datajpa.repository.support.SqlStatementCounter;
+
+import static org.assertj.core.api.Assertions.*;
+
+// 테스트에서 쿼리 수를 고정할 때 쓴다.
+// resetSqlCount() 다음부터 나간 SQL을 세고 assertSqlCount(n)으로 확인한다. 플러시 때문에 나가는 insert도 세어지니까 보통 em.flush(), em.clear() 다음에 reset 한다.
+public final class SqlCountAssertions {
+
+    private SqlCountAssertions() {
+    }
+
+    public static void resetSqlCount() {
+        SqlStatementCounter.begin("test", 0, false);
+    }
+
+    // 검증이 실패해도 스코프는 닫는다. 안 닫으면 같은 스레드에서 도는 다음 테스트까지 계속 센다.
+    public static void assertSqlCount(int expected) {
+        SqlStatementCounter.Scope scope = SqlStatementCounter.current();
+        assertThat(scope).as("resetSqlCount()를 먼저 불러야 한다.").isNotNull();
+        try {
+            assertThat(scope.getCount())
+                    .as("executed SQL:\n%s", String.join("\n", scope.getStatements()))
+                    .isEqualTo(expected);
+        } finally {
+            SqlStatementCounter.end();
+        }
+    }
+}